@@ -15,13 +15,14 @@ import static com.redhat.ceylon.eclipse.code.editor.CeylonEditor.PARSE_ANNOTATIO
 import static com.redhat.ceylon.eclipse.code.editor.CeylonEditor.PARSE_ANNOTATION_TYPE_ERROR;
 import static com.redhat.ceylon.eclipse.code.editor.CeylonEditor.PARSE_ANNOTATION_TYPE_INFO;
 import static com.redhat.ceylon.eclipse.code.editor.CeylonEditor.PARSE_ANNOTATION_TYPE_WARNING;
-import static com.redhat.ceylon.eclipse.code.editor.CeylonEditor.isParseAnnotation;
 import static org.eclipse.core.resources.IMarker.SEVERITY_ERROR;
 import static org.eclipse.core.resources.IMarker.SEVERITY_INFO;
 import static org.eclipse.core.resources.IMarker.SEVERITY_WARNING;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -62,10 +63,60 @@ public class AnnotationCreator extends ErrorVisitor {
         	return pos.toString() + " - "+ message;
         }
     }
+    
+    /**
+     * Identifies a message at a certain position, so that
+     * the annotation for a message reported by the previous
+     * parse can be kept if the new parse reports the same
+     * message again.
+     */
+    private static final class MessageKey {
+        private final String message;
+        private final int offset;
+        private final int length;
+        private final int code;
+        private final int severity;
+        
+        private MessageKey(PositionedMessage pm, Position pos) {
+            message = pm.message;
+            offset = pos.getOffset();
+            length = pos.getLength();
+            code = pm.code;
+            severity = pm.severity;
+        }
+        
+        @Override
+        public boolean equals(Object obj) {
+            if (obj instanceof MessageKey) {
+                MessageKey that = (MessageKey) obj;
+                return offset==that.offset && length==that.length &&
+                        code==that.code && severity==that.severity &&
+                        (message==null ? that.message==null : 
+                            message.equals(that.message));
+            }
+            else {
+                return false;
+            }
+        }
+        
+        @Override
+        public int hashCode() {
+            int result = offset;
+            result = 31*result + length;
+            result = 31*result + code;
+            result = 31*result + severity;
+            return 31*result + (message==null ? 0 : message.hashCode());
+        }
+    }
 
     private final CeylonEditor editor;
     private final List<PositionedMessage> messages= new LinkedList<PositionedMessage>();
-    private final List<Annotation> annotations= new LinkedList<Annotation>();
+    /**
+     * The annotations currently in the annotation model, 
+     * with the messages they were created for.
+     */
+    private final Map<Annotation,PositionedMessage> annotations= 
+            new HashMap<Annotation,PositionedMessage>();
 
     public AnnotationCreator(CeylonEditor textEditor) {
         editor= textEditor;
@@ -80,6 +131,15 @@ public class AnnotationCreator extends ErrorVisitor {
         		error.getCode()));
     }
 
+    /**
+     * Reconcile the annotation model with the messages 
+     * reported by the last parse. Annotations for messages
+     * which were reported again are left alone, since the
+     * annotation model has kept their positions up to date
+     * with the edits to the document, and only annotations
+     * for messages which went away or are new are removed
+     * or added.
+     */
     public void updateAnnotations() {
     	if (editor.isBackgroundParsingPaused()) {
     		messages.clear();
@@ -88,28 +148,45 @@ public class AnnotationCreator extends ErrorVisitor {
         IDocumentProvider docProvider= editor.getDocumentProvider();
         if (docProvider!=null) {
             IAnnotationModel model= docProvider.getAnnotationModel(editor.getEditorInput());
-            if (model instanceof IAnnotationModelExtension) {
-                IAnnotationModelExtension modelExt= (IAnnotationModelExtension) model;
-                Annotation[] oldAnnotations= annotations.toArray(new Annotation[annotations.size()]);
-                Map<Annotation,Position> newAnnotations= new HashMap<Annotation,Position>(messages.size());
+            // model could be null if, e.g., we're directly browsing a file version in a src repo
+            if (model!=null) {
+                Map<MessageKey,PositionedMessage> newMessages= 
+                        new LinkedHashMap<MessageKey,PositionedMessage>();
                 for (PositionedMessage pm: messages) {
+                    newMessages.put(new MessageKey(pm, pm.pos), pm);
+                }
+                List<Annotation> oldAnnotations= new ArrayList<Annotation>();
+                for (Iterator<Map.Entry<Annotation,PositionedMessage>> i= 
+                        annotations.entrySet().iterator(); i.hasNext(); ) {
+                    Map.Entry<Annotation,PositionedMessage> e= i.next();
+                    Position pos= model.getPosition(e.getKey());
+                    if (pos==null || pos.isDeleted() ||
+                            newMessages.remove(new MessageKey(e.getValue(), pos))==null) {
+                        oldAnnotations.add(e.getKey());
+                        i.remove();
+                    }
+                }
+                Map<Annotation,Position> newAnnotations= 
+                        new HashMap<Annotation,Position>(newMessages.size());
+                for (PositionedMessage pm: newMessages.values()) {
                     Annotation a= createAnnotation(pm);
                     newAnnotations.put(a, pm.pos);
-                    annotations.add(a);
+                    annotations.put(a, pm);
                 }
-                modelExt.replaceAnnotations(oldAnnotations, newAnnotations);
-            } 
-            else if (model != null) { // model could be null if, e.g., we're directly browsing a file version in a src repo
-                for (Iterator i= model.getAnnotationIterator(); i.hasNext(); ) {
-                    Annotation a= (Annotation) i.next();
-                    if (isParseAnnotation(a)) {
-                        model.removeAnnotation(a);
+                if (model instanceof IAnnotationModelExtension) {
+                    if (!oldAnnotations.isEmpty() || !newAnnotations.isEmpty()) {
+                        ((IAnnotationModelExtension) model).replaceAnnotations(
+                                oldAnnotations.toArray(new Annotation[oldAnnotations.size()]), 
+                                newAnnotations);
                     }
                 }
-                for (PositionedMessage pm: messages) {
-                    Annotation a= createAnnotation(pm);
-                    model.addAnnotation(a, pm.pos);
-                    annotations.add(a);
+                else {
+                    for (Annotation a: oldAnnotations) {
+                        model.removeAnnotation(a);
+                    }
+                    for (Map.Entry<Annotation,Position> e: newAnnotations.entrySet()) {
+                        model.addAnnotation(e.getKey(), e.getValue());
+                    }
                 }
             }
         }
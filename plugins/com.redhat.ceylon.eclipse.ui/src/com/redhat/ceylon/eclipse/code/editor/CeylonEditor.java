@@ -883,6 +883,7 @@ extends PreviousSubWordAction implements IUpdate {
 
     public void scheduleParsing() {
     	if (parserScheduler!=null && !backgroundParsingPaused) {
+    		parserScheduler.requireTypecheck();
     		parserScheduler.cancel();
     		parserScheduler.schedule(REPARSE_SCHEDULE_DELAY);
     	}
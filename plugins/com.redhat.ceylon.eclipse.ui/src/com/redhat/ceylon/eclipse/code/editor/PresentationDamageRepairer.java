@@ -5,6 +5,7 @@ import static com.redhat.ceylon.eclipse.code.parse.CeylonSourcePositionLocator.g
 import static com.redhat.ceylon.eclipse.code.parse.CeylonSourcePositionLocator.getTokenIndexAtCharacter;
 import static com.redhat.ceylon.eclipse.code.parse.CeylonSourcePositionLocator.getTokenIterator;
 
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 
@@ -12,6 +13,7 @@ import org.antlr.runtime.ANTLRStringStream;
 import org.antlr.runtime.CommonToken;
 import org.antlr.runtime.CommonTokenStream;
 import org.antlr.runtime.RecognitionException;
+import org.antlr.runtime.Token;
 import org.eclipse.jface.text.BadLocationException;
 import org.eclipse.jface.text.DocumentEvent;
 import org.eclipse.jface.text.IDocument;
@@ -38,6 +40,14 @@ class PresentationDamageRepairer implements IPresentationDamager,
     private final CeylonTokenColorer tokenColorer;
     private volatile List<CommonToken> tokens;
     
+    //the length of the document the tokens were lexed
+    //from, and the edits made to it since then
+    private int tokenizedLength;
+    private int editOffset;
+    private int editLength;
+    private int editTextLength;
+    private int editCount;
+    
 	PresentationDamageRepairer(ISourceViewer sourceViewer) {
 		this.sourceViewer = sourceViewer;
 		tokenColorer = new CeylonTokenColorer();
@@ -57,6 +67,12 @@ class PresentationDamageRepairer implements IPresentationDamager,
 					event.getLength());
 		}
 		
+		editOffset = event.getOffset();
+		editLength = event.getLength();
+		editTextLength = event.getText()==null ? 
+				0 : event.getText().length();
+		editCount++;
+		
 		int i = getTokenIndexAtCharacter(tokens, event.getOffset()-1);
 		if (i<0) i=-i;
 		CommonToken t = tokens.get(i);
@@ -130,7 +146,7 @@ class PresentationDamageRepairer implements IPresentationDamager,
 		//and cache here than in getDamageRegion(),
 		//because these methods get called in strange
 		//orders
-		tokens = parse();
+		tokens = relex();
 		
 		//int prevStartOffset= -1;
 		//int prevEndOffset= -1;
@@ -205,8 +221,158 @@ class PresentationDamageRepairer implements IPresentationDamager,
 		}
 	}
 	
-	private List<CommonToken> parse() {
+	/**
+	 * Bring the cached tokens up to date with the
+	 * document. When there was a single edit since the
+	 * last time, only re-lex from the last stable token
+	 * before the edit up to the point where the new
+	 * tokens line up with the cached ones again, and
+	 * reuse the cached tokens everywhere else. Otherwise,
+	 * or whenever the edit introduces an identifier or
+	 * string literal whose token type only the parser
+	 * can determine, fall back to a full parse.
+	 */
+	private List<CommonToken> relex() {
 		String text = sourceViewer.getDocument().get();
+		List<CommonToken> result = null;
+		if (tokens!=null && editCount==1 && 
+				text.length()==tokenizedLength+editTextLength-editLength) {
+			result = relex(tokens, text);
+		}
+		if (result==null) {
+			result = parse(text);
+		}
+		tokenizedLength = text.length();
+		editCount = 0;
+		return result;
+	}
+
+	private List<CommonToken> relex(List<CommonToken> oldTokens, 
+			String text) {
+		int delta = editTextLength-editLength;
+		int editEnd = editOffset+editTextLength;
+		
+		//restart from the token before the one touching
+		//the edit, since the lexer may have looked ahead
+		//past the end of that token
+		int i = getTokenIndexAtCharacter(oldTokens, editOffset-1);
+		if (i<0) i=-i;
+		int restart = Math.max(0, i-1);
+		CommonToken first = oldTokens.get(restart);
+		
+		RestartableStringStream input = new RestartableStringStream(text, 
+				first.getStartIndex(), first.getLine(), 
+				first.getCharPositionInLine());
+		CeylonLexer lexer = new CeylonLexer(input);
+		List<CommonToken> result = 
+				new ArrayList<CommonToken>(oldTokens.size()+8);
+		result.addAll(oldTokens.subList(0, restart));
+		
+		int j = restart;
+		while (true) {
+			CommonToken token = (CommonToken) lexer.nextToken();
+			int start = token.getStartIndex();
+			//the position of the token in the old text
+			int oldStart;
+			if (start<editOffset) {
+				oldStart = start;
+			}
+			else if (start>=editEnd) {
+				oldStart = start-delta;
+			}
+			else {
+				oldStart = -1;
+			}
+			while (j<oldTokens.size() && 
+					oldTokens.get(j).getStartIndex()<oldStart) {
+				j++;
+			}
+			CommonToken old = j<oldTokens.size() && oldStart>=0 && 
+					oldTokens.get(j).getStartIndex()==oldStart &&
+					lexerType(oldTokens.get(j))==token.getType() ? 
+							oldTokens.get(j) : null;
+			
+			if (old!=null && start>=editEnd && 
+					old.getStopIndex()+delta==token.getStopIndex()) {
+				//back in sync with the cached tokens
+				reuse(oldTokens, j, result, input, delta, 
+						old.getLine(), token.getLine()-old.getLine(),
+						token.getCharPositionInLine()-old.getCharPositionInLine());
+				return result;
+			}
+			if (old!=null) {
+				//keep the token type assigned by the parser
+				token.setType(old.getType());
+			}
+			else if (token.getType()==CeylonLexer.LIDENTIFIER ||
+					token.getType()==CeylonLexer.STRING_LITERAL) {
+				return null;
+			}
+			token.setTokenIndex(result.size());
+			result.add(token);
+			if (token.getType()==Token.EOF) {
+				return result;
+			}
+		}
+	}
+
+	private static void reuse(List<CommonToken> oldTokens, int from,
+			List<CommonToken> result, ANTLRStringStream input, 
+			int delta, int line, int lineDelta, int columnDelta) {
+		for (int k=from; k<oldTokens.size(); k++) {
+			CommonToken token = oldTokens.get(k);
+			if (delta!=0) {
+				token.setStartIndex(token.getStartIndex()+delta);
+				token.setStopIndex(token.getStopIndex()+delta);
+			}
+			if (columnDelta!=0 && token.getLine()==line) {
+				token.setCharPositionInLine(token.getCharPositionInLine()
+						+columnDelta);
+			}
+			if (lineDelta!=0) {
+				token.setLine(token.getLine()+lineDelta);
+			}
+			//the text of the token is read from its stream
+			token.setInputStream(input);
+			token.setTokenIndex(result.size());
+			result.add(token);
+		}
+	}
+
+	/**
+	 * @return the type the lexer originally assigned to
+	 *         a token whose type may have been refined 
+	 *         by the parser
+	 */
+	private static int lexerType(CommonToken token) {
+		switch (token.getType()) {
+		case CeylonLexer.PIDENTIFIER:
+		case CeylonLexer.AIDENTIFIER:
+			return CeylonLexer.LIDENTIFIER;
+		case CeylonLexer.ASTRING_LITERAL:
+			return CeylonLexer.STRING_LITERAL;
+		default:
+			return token.getType();
+		}
+	}
+	
+	/**
+	 * A string stream positioned at a given offset, line,
+	 * and column, so that lexing can restart from the 
+	 * start of any token.
+	 */
+	private static final class RestartableStringStream 
+			extends ANTLRStringStream {
+		RestartableStringStream(String text, int offset, 
+				int line, int charPositionInLine) {
+			super(text);
+			p = offset;
+			this.line = line;
+			this.charPositionInLine = charPositionInLine;
+		}
+	}
+	
+	private List<CommonToken> parse(String text) {
 		ANTLRStringStream input = new ANTLRStringStream(text);
         CeylonLexer lexer = new CeylonLexer(input);
         CommonTokenStream tokenStream = new CommonTokenStream(lexer);
@@ -223,5 +389,8 @@ class PresentationDamageRepairer implements IPresentationDamager,
         return tokenStream.getTokens(); 
 	}
 	
-    public void setDocument(IDocument document) {}
+    public void setDocument(IDocument document) {
+    	tokens = null;
+    	editCount = 0;
+    }
 }
\ No newline at end of file
@@ -38,14 +38,13 @@ import org.eclipse.ui.IEditorPart;
 import org.eclipse.ui.IMemento;
 import org.eclipse.ui.dialogs.FilteredItemsSelectionDialog;
 
-import com.redhat.ceylon.compiler.typechecker.TypeChecker;
 import com.redhat.ceylon.compiler.typechecker.context.PhasedUnit;
 import com.redhat.ceylon.compiler.typechecker.model.Declaration;
 import com.redhat.ceylon.compiler.typechecker.model.Module;
 import com.redhat.ceylon.compiler.typechecker.model.Modules;
 import com.redhat.ceylon.compiler.typechecker.model.Package;
 import com.redhat.ceylon.eclipse.code.outline.CeylonLabelProvider;
-import com.redhat.ceylon.eclipse.core.builder.CeylonBuilder;
+import com.redhat.ceylon.eclipse.core.builder.DeclarationIndex;
 import com.redhat.ceylon.eclipse.ui.CeylonPlugin;
 
 public class OpenCeylonDeclarationDialog extends FilteredItemsSelectionDialog {
@@ -299,41 +298,23 @@ public class OpenCeylonDeclarationDialog extends FilteredItemsSelectionDialog {
             ItemsFilter itemsFilter, IProgressMonitor progressMonitor) throws CoreException {
         usedNames.clear();
         Set<DeclarationWithProject> set = new HashSet<DeclarationWithProject>();
-        for (PhasedUnit unit: CeylonBuilder.getUnits()) {
-            for (Declaration dec: unit.getDeclarations()) {
-                if (dec.isToplevel() && isPresentable(dec)) {
-                    DeclarationWithProject dwp = new DeclarationWithProject(dec, 
-                            CeylonBuilder.getFile(unit).getProject(),
-                            unit.getUnitFile().getPath());
+        //the index returns the declarations of source files
+        //first, so that they win over the same declarations
+        //found in module archives
+        for (DeclarationIndex.Entry entry: 
+                DeclarationIndex.getEntries(itemsFilter.getPattern(), includeJava())) {
+            Declaration dec = entry.getDeclaration();
+            if (isPresentable(dec)) {
+                DeclarationWithProject dwp = new DeclarationWithProject(dec, 
+                        entry.getProject(), entry.getPath());
+                //TODO: eliminate duplicates based on the
+                //      location of the module archive
+                if (set.add(dwp)) {
                     contentProvider.add(dwp, itemsFilter);
-                    set.add(dwp);
                     nameOccurs(dec);
                 }
             }
         }
-        for (IProject project: CeylonBuilder.getProjects()) {
-            TypeChecker tc = CeylonBuilder.getProjectTypeChecker(project);
-            for (Module m: tc.getContext().getModules().getListOfModules()) {
-                if (!m.isJava() || includeJava() ) {
-                    for (Package p: m.getPackages()) {
-                        for (Declaration dec: p.getMembers()) {
-                            if (isPresentable(dec)) {
-                                boolean isUnversionedModule = m.getVersion()==null;
-								DeclarationWithProject dwp = new DeclarationWithProject(dec, 
-                                		isUnversionedModule ? null : project, 
-                                				null); //TODO: figure out the full path
-                                //TODO: eliminate duplicates based on the
-                                //      location of the module archive
-                                if (!set.contains(dwp)) {
-                                    contentProvider.add(dwp, itemsFilter);
-                                    nameOccurs(dec);
-                                }
-                            }
-                        }
-                    }
-                }
-            }
-        }
     }
     
     boolean includeJava() {
@@ -1,10 +1,11 @@
 package com.redhat.ceylon.eclipse.code.outline;
 
 import static com.redhat.ceylon.eclipse.code.editor.AdditionalAnnotationCreator.getRefinedDeclaration;
+import static com.redhat.ceylon.eclipse.core.builder.TypeHierarchyIndex.getSubtypes;
 
 import java.lang.reflect.InvocationTargetException;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -18,13 +19,10 @@ import com.redhat.ceylon.compiler.typechecker.model.Class;
 import com.redhat.ceylon.compiler.typechecker.model.ClassOrInterface;
 import com.redhat.ceylon.compiler.typechecker.model.Declaration;
 import com.redhat.ceylon.compiler.typechecker.model.Interface;
-import com.redhat.ceylon.compiler.typechecker.model.Module;
-import com.redhat.ceylon.compiler.typechecker.model.Modules;
-import com.redhat.ceylon.compiler.typechecker.model.Package;
 import com.redhat.ceylon.compiler.typechecker.model.TypeDeclaration;
 import com.redhat.ceylon.compiler.typechecker.model.TypedDeclaration;
-import com.redhat.ceylon.compiler.typechecker.model.Unit;
 import com.redhat.ceylon.eclipse.code.editor.CeylonEditor;
+import com.redhat.ceylon.eclipse.code.parse.CeylonParseController;
 
 public final class CeylonHierarchyContentProvider 
         implements ITreeContentProvider {
@@ -82,24 +80,11 @@ public final class CeylonHierarchyContentProvider
 			
 			monitor.beginTask("Building type hierarchy", 100000);
 			
-			Modules modules = editor.getParseController().getTypeChecker()
-		            .getContext().getModules();
+			CeylonParseController cpc = editor.getParseController();
 
 			boolean isFromUnversionedModule = declaration.getUnit().getPackage()
 					.getModule().getVersion()==null;
 
-			Set<Module> allModules = modules.getListOfModules();
-			monitor.worked(10000);
-			
-			Set<Package> packages = new HashSet<Package>();
-			for (Module m: allModules) {
-				if (m.getVersion()!=null || isFromUnversionedModule) {
-					packages.addAll(m.getPackages());
-					monitor.worked(30000/allModules.size());
-					if (monitor.isCanceled()) return;
-				}
-			}
-
 			subtypesOfAllTypes.put(declaration, getSubtypePathNode(declaration));
 			
 		    Declaration dec = declaration;
@@ -143,50 +128,79 @@ public final class CeylonHierarchyContentProvider
 			subtypesRoot = getSubtypeHierarchyNode(declaration);
 			supertypesRoot = getSupertypeHierarchyNode(declaration);
 			
+			monitor.worked(10000);
 			if (monitor.isCanceled()) return;
 			
-		    for (Module m: allModules) {
-		    	if (m.getVersion()!=null || isFromUnversionedModule) {
-		        for (Package p: packages) { //workaround CME
-		            for (Unit u: p.getUnits()) {
-		            	try {
-		            		for (Declaration d: u.getDeclarations()) {
-		            			if (d instanceof ClassOrInterface) {
-		            				if (declaration instanceof TypeDeclaration) {
-		            					TypeDeclaration td = (TypeDeclaration) d;
-		            					ClassOrInterface etd = td.getExtendedTypeDeclaration();
-		            					if (etd!=null) {
-		            						add(td, etd);
-		            					}
-		            					for (TypeDeclaration std: td.getSatisfiedTypeDeclarations()) {
-		            						add(td, std);
-		            					}
-		            				}
-		            				else if (declaration instanceof TypedDeclaration) {
-		            					TypeDeclaration td = (TypeDeclaration) d;
-		            					//TODO: keep the directly refined declarations in the model
-		            					//      (get the typechecker to set this up)
-		            					Declaration mem = td.getDirectMember(declaration.getName(), null);
-		            					if (mem!=null) {
-		            						for (Declaration id: td.getInheritedMembers(declaration.getName())) {
-		            							add(mem, id);
-		            						}
-		            					}                        		
-		            				}
-		            			}
-		            		}
-		            	}
-		            	catch (Exception e) {
-		            		e.printStackTrace();
-		            	}
-		            }
-			        monitor.worked(60000/packages.size());
-					if (monitor.isCanceled()) return;
-		        }
-		    	}
-		    }
+			//only the supertypes and subtypes of the type
+			//can appear in the hierarchy, so there's no 
+			//need to look at the rest of the model
+			TypeDeclaration supertypesOf;
+			TypeDeclaration subtypesOf;
+			if (declaration instanceof TypeDeclaration) {
+				supertypesOf = (TypeDeclaration) declaration;
+				subtypesOf = (TypeDeclaration) declaration;
+			}
+			else if (declaration instanceof TypedDeclaration &&
+					declaration.isClassOrInterfaceMember()) {
+				supertypesOf = (TypeDeclaration) declaration.getContainer();
+				subtypesOf = (TypeDeclaration) dec.getContainer();
+			}
+			else {
+				monitor.done();
+				return;
+			}
+			Set<TypeDeclaration> types = new LinkedHashSet<TypeDeclaration>();
+			collectSupertypes(supertypesOf, types);
+			types.add(subtypesOf);
+			types.addAll(getSubtypes(cpc.getProject(), cpc.getTypeChecker(), subtypesOf));
+			monitor.worked(30000);
+			if (monitor.isCanceled()) return;
+			
+			for (TypeDeclaration d: types) {
+				if (d instanceof ClassOrInterface && 
+						(isFromUnversionedModule || 
+								d.getUnit().getPackage().getModule().getVersion()!=null)) {
+					try {
+						if (declaration instanceof TypeDeclaration) {
+							TypeDeclaration td = (TypeDeclaration) d;
+							ClassOrInterface etd = td.getExtendedTypeDeclaration();
+							if (etd!=null) {
+								add(td, etd);
+							}
+							for (TypeDeclaration std: td.getSatisfiedTypeDeclarations()) {
+								add(td, std);
+							}
+						}
+						else if (declaration instanceof TypedDeclaration) {
+							TypeDeclaration td = (TypeDeclaration) d;
+							//TODO: keep the directly refined declarations in the model
+							//      (get the typechecker to set this up)
+							Declaration mem = td.getDirectMember(declaration.getName(), null);
+							if (mem!=null) {
+								for (Declaration id: td.getInheritedMembers(declaration.getName())) {
+									add(mem, id);
+								}
+							}                        		
+						}
+					}
+					catch (Exception e) {
+						e.printStackTrace();
+					}
+				}
+				monitor.worked(60000/types.size());
+				if (monitor.isCanceled()) return;
+			}
 		    monitor.done();
 		}
+
+		private void collectSupertypes(TypeDeclaration td, Set<TypeDeclaration> result) {
+			if (td!=null && result.add(td)) {
+				collectSupertypes(td.getExtendedTypeDeclaration(), result);
+				for (TypeDeclaration std: td.getSatisfiedTypeDeclarations()) {
+					collectSupertypes(std, result);
+				}
+			}
+		}
 	}
 
 	public static final class RootNode {
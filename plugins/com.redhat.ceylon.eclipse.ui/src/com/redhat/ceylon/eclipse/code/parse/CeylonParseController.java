@@ -1,9 +1,9 @@
 package com.redhat.ceylon.eclipse.code.parse;
 
-import static com.redhat.ceylon.compiler.java.util.Util.makeRepositoryManager;
 import static com.redhat.ceylon.eclipse.code.parse.TreeLifecycleListener.Stage.LEXICAL_ANALYSIS;
 import static com.redhat.ceylon.eclipse.code.parse.TreeLifecycleListener.Stage.SYNTACTIC_ANALYSIS;
 import static com.redhat.ceylon.eclipse.code.parse.TreeLifecycleListener.Stage.TYPE_ANALYSIS;
+import static com.redhat.ceylon.eclipse.core.builder.CachingRepositoryManager.getRepositoryManager;
 import static com.redhat.ceylon.eclipse.core.builder.CeylonBuilder.getCeylonModulesOutputDirectory;
 import static com.redhat.ceylon.eclipse.core.builder.CeylonBuilder.getProjectModelLoader;
 import static com.redhat.ceylon.eclipse.core.builder.CeylonBuilder.getProjectTypeChecker;
@@ -14,12 +14,10 @@ import static com.redhat.ceylon.eclipse.core.builder.CeylonBuilder.isModelAvaila
 import static com.redhat.ceylon.eclipse.core.builder.CeylonBuilder.showWarnings;
 import static org.eclipse.core.runtime.jobs.Job.getJobManager;
 
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 
-import org.antlr.runtime.ANTLRInputStream;
 import org.antlr.runtime.CommonToken;
 import org.antlr.runtime.CommonTokenStream;
 import org.antlr.runtime.RecognitionException;
@@ -104,6 +102,25 @@ public class CeylonParseController {
      */
     private TypeChecker typeChecker;
     
+    /**
+     * The source text of the most recent parse, if it ran
+     * all the way through typechecking. Null otherwise.
+     */
+    private volatile String typecheckedContents;
+    
+    /**
+     * The tokens of the current AST, if it was produced
+     * from the source text without lexical or syntax
+     * errors, and typechecked. Null otherwise.
+     */
+    private List<CommonToken> typecheckedTokens;
+    
+    /**
+     * The file of the current AST, if it has
+     * {@link #typecheckedTokens}.
+     */
+    private VirtualFile typecheckedFile;
+    
     /**
      * @param filePath		the project-relative path of file
      * @param project		the project that contains the file
@@ -146,6 +163,19 @@ public class CeylonParseController {
     
     public void parse(String contents, 
     		IProgressMonitor monitor, Stager stager) {
+        parse(contents, monitor, stager, false);
+    }
+    
+    /**
+     * @param incremental true if the current AST may be
+     *        kept when the contents only differ from the
+     *        ones it was produced from in whitespace and
+     *        comments, in which case its tokens are moved
+     *        to their new offsets, and the unit is neither
+     *        parsed nor typechecked again
+     */
+    private void parse(String contents, IProgressMonitor monitor, 
+            Stager stager, boolean incremental) {
         
     	IPath path = this.filePath;
     	IProject project = this.project;
@@ -166,17 +196,49 @@ public class CeylonParseController {
             }
         }
 
+        List<CommonToken> previousTokens = typecheckedTokens;
+        VirtualFile previousFile = typecheckedFile;
+        Tree.CompilationUnit previousRootNode = rootNode;
+        typecheckedContents = null;
+        typecheckedTokens = null;
+        typecheckedFile = null;
+        
         VirtualFile file = createSourceCodeVirtualFile(contents, path);
         
         if (isCanceling(monitor)) {
             return;
         }
         
-        CeylonLexer lexer = new CeylonLexer(createInputStream(file));
+        CeylonLexer lexer = new CeylonLexer(new CharSequenceStream(contents));
         CommonTokenStream tokenStream = new CommonTokenStream(lexer);
         tokenStream.fill();
-        tokens = new ArrayList<CommonToken>(tokenStream.getTokens().size()); 
-        tokens.addAll(tokenStream.getTokens());
+        List<CommonToken> newTokens = 
+                new ArrayList<CommonToken>(tokenStream.getTokens().size()); 
+        newTokens.addAll(tokenStream.getTokens());
+        
+        if (incremental && previousTokens!=null && 
+                file.equals(previousFile) && 
+                lexer.getErrors().isEmpty() &&
+                moveTokens(previousTokens, newTokens)) {
+            //only whitespace and comments changed, so
+            //the typechecked AST is still good
+            tokens = newTokens;
+            rootNode = previousRootNode;
+            if (stager!=null) {
+                stager.afterStage(LEXICAL_ANALYSIS, monitor);
+                stager.afterStage(SYNTACTIC_ANALYSIS, monitor);
+            }
+            collectErrors(rootNode);
+            typecheckedContents = contents;
+            typecheckedTokens = tokens;
+            typecheckedFile = file;
+            if (stager!=null) {
+                stager.afterStage(TYPE_ANALYSIS, monitor);
+            }
+            return;
+        }
+        
+        tokens = newTokens;
 
         if (stager!=null) {
         	stager.afterStage(LEXICAL_ANALYSIS, monitor);
@@ -199,8 +261,9 @@ public class CeylonParseController {
         //      services like FoldingUpdater can
         //      make use of it in the callback
         rootNode = cu;
+        Tree.CompilationUnit parsedCu = cu;
         
-        collectLexAndParseErrors(lexer, parser, cu);
+        boolean syntaxErrors = collectLexAndParseErrors(lexer, parser, cu);
         
         if (stager!=null) {
         	stager.afterStage(SYNTACTIC_ANALYSIS, monitor);
@@ -251,12 +314,29 @@ public class CeylonParseController {
         
         collectErrors(cu);
         
+        typecheckedContents = contents;
+        if (cu==parsedCu && !syntaxErrors) {
+            typecheckedTokens = tokens;
+            typecheckedFile = file;
+        }
+        
         if (stager!=null) {
         	stager.afterStage(TYPE_ANALYSIS, monitor);
         }
         
         return;
     }
+    
+    /**
+     * @return true if the current AST is the result of
+     *         typechecking the current contents of the
+     *         given document
+     */
+    public boolean isUpToDate(IDocument doc) {
+        String contents = typecheckedContents;
+        return contents!=null && rootNode!=null && 
+                contents.equals(doc.get());
+    }
 
 	private VirtualFile createSourceCodeVirtualFile(String contents, IPath path) {
         if (path == null) {
@@ -267,15 +347,6 @@ public class CeylonParseController {
         }
 	}
 
-	private ANTLRInputStream createInputStream(VirtualFile file) {
-        try {
-            return new ANTLRInputStream(file.getInputStream());
-        } 
-        catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-	}
-
 	private VirtualFile inferSrcDir(IPath path) {
 		String pathString = path.toString();
 		int lastBangIdx = pathString.lastIndexOf('!');
@@ -288,9 +359,66 @@ public class CeylonParseController {
 		}
 	}
 
-	private void collectLexAndParseErrors(CeylonLexer lexer,
+	/**
+	 * Transfer the positions of the given new tokens to the
+	 * tokens of the current AST, if the new tokens differ
+	 * from them only in whitespace and comments, and put
+	 * the tokens of the AST in the list of new tokens in
+	 * place of the ones they match.
+	 * 
+	 * @return false if the tokens differ in something else
+	 *         than whitespace and comments, in which case
+	 *         nothing is changed
+	 */
+	private static boolean moveTokens(List<CommonToken> oldTokens, 
+	        List<CommonToken> newTokens) {
+	    List<CommonToken> oldCode = new ArrayList<CommonToken>(oldTokens.size());
+	    for (CommonToken token: oldTokens) {
+	        if (token.getChannel()!=CommonToken.HIDDEN_CHANNEL) {
+	            oldCode.add(token);
+	        }
+	    }
+	    int i = 0;
+	    for (CommonToken token: newTokens) {
+	        if (token.getChannel()!=CommonToken.HIDDEN_CHANNEL) {
+	            if (i>=oldCode.size()) {
+	                return false;
+	            }
+	            CommonToken oldToken = oldCode.get(i++);
+	            if (oldToken.getType()!=token.getType() ||
+	                    !oldToken.getText().equals(token.getText())) {
+	                return false;
+	            }
+	        }
+	    }
+	    if (i!=oldCode.size()) {
+	        return false;
+	    }
+	    i = 0;
+	    for (int j=0; j<newTokens.size(); j++) {
+	        CommonToken token = newTokens.get(j);
+	        if (token.getChannel()!=CommonToken.HIDDEN_CHANNEL) {
+	            CommonToken oldToken = oldCode.get(i++);
+	            oldToken.setInputStream(token.getInputStream());
+	            oldToken.setStartIndex(token.getStartIndex());
+	            oldToken.setStopIndex(token.getStopIndex());
+	            oldToken.setLine(token.getLine());
+	            oldToken.setCharPositionInLine(token.getCharPositionInLine());
+	            oldToken.setTokenIndex(token.getTokenIndex());
+	            newTokens.set(j, oldToken);
+	        }
+	    }
+	    return true;
+	}
+
+	/**
+	 * @return true if there were any lexical or syntax
+	 *         errors
+	 */
+	private boolean collectLexAndParseErrors(CeylonLexer lexer,
 			CeylonParser parser, Tree.CompilationUnit cu) {
 		List<LexError> lexerErrors = lexer.getErrors();
+		boolean errors = !lexerErrors.isEmpty();
         for (LexError le : lexerErrors) {
             cu.addLexError(le);
         }
@@ -300,7 +428,9 @@ public class CeylonParseController {
         for (ParseError pe : parserErrors) {
             cu.addParseError(pe);
         }
+        errors = errors || !parserErrors.isEmpty();
         parserErrors.clear();
+        return errors;
 	}
 
 	private void collectErrors(Tree.CompilationUnit cu) {
@@ -375,7 +505,7 @@ public class CeylonParseController {
 			}
 			repos.add(getCeylonModulesOutputDirectory(project).getAbsolutePath());
 		}
-		tcb.setRepositoryManager(makeRepositoryManager(repos, null, 
+		tcb.setRepositoryManager(getRepositoryManager(repos, null, 
 				new EclipseLogger()));
 		
 		TypeChecker tc = tcb.getTypeChecker();
@@ -528,8 +658,19 @@ public class CeylonParseController {
     
 	public void parse(IDocument doc, IProgressMonitor monitor, 
 			Stager stager) {
+	    parse(doc, monitor, stager, false);
+	}
+
+	/**
+	 * @param incremental true if the current AST may be
+	 *        kept when the document has only been edited
+	 *        in whitespace and comments since it was
+	 *        typechecked
+	 */
+	public void parse(IDocument doc, IProgressMonitor monitor, 
+	        Stager stager, boolean incremental) {
 	    document= doc;
-	    parse(document.get(), monitor, stager);
+	    parse(document.get(), monitor, stager, incremental);
 	}
 
 	public IProject getProject() {
@@ -21,6 +21,14 @@ public class CeylonParserScheduler extends Job {
 
     private boolean canceling = false;
     
+    /**
+     * True if the next run must typecheck the unit again,
+     * because something else than the document may have
+     * changed since the last run, for example the model
+     * of the project after a build.
+     */
+    private volatile boolean typecheckRequired = true;
+    
     private CeylonParseController parseController;
     private CeylonEditor editor;
     private AnnotationCreator annotationCreator;
@@ -50,6 +58,15 @@ public class CeylonParserScheduler extends Job {
         return canceling;
     }
     
+    /**
+     * Make the next run typecheck the unit again, even if
+     * the document was only edited in whitespace and
+     * comments.
+     */
+    public void requireTypecheck() {
+        typecheckRequired = true;
+    }
+    
     public class Stager {
     	void afterStage(Stage stage, IProgressMonitor monitor) {
     		notifyModelListeners(stage, monitor);
@@ -107,8 +124,20 @@ public class CeylonParserScheduler extends Job {
                 // don't bother to retrieve the AST; we don't 
                 // need it; just make sure the document gets 
                 // parsed
-                parseController.parse(document, wrappedMonitor, new Stager());
-                if (!wrappedMonitor.isCanceled()) {
+                boolean incremental = !typecheckRequired;
+                typecheckRequired = false;
+                boolean done = false;
+                try {
+                    parseController.parse(document, wrappedMonitor, 
+                            new Stager(), incremental);
+                    done = !wrappedMonitor.isCanceled();
+                }
+                finally {
+                    if (!done) {
+                        typecheckRequired = true;
+                    }
+                }
+                if (done) {
                 	annotationCreator.updateAnnotations();
                 }
             } 
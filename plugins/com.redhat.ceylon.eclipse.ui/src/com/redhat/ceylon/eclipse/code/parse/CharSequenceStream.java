@@ -0,0 +1,60 @@
+package com.redhat.ceylon.eclipse.code.parse;
+
+import org.antlr.runtime.ANTLRStringStream;
+import org.antlr.runtime.CharStream;
+
+/**
+ * An ANTLR character stream reading directly from a
+ * {@link CharSequence}, without copying it into a char
+ * array, and without encoding it to bytes and decoding
+ * it again.
+ */
+public class CharSequenceStream extends ANTLRStringStream {
+
+    private final CharSequence chars;
+
+    public CharSequenceStream(CharSequence chars) {
+        this.chars = chars;
+        this.n = chars.length();
+    }
+
+    @Override
+    public void consume() {
+        if (p<n) {
+            charPositionInLine++;
+            if (chars.charAt(p)=='\n') {
+                line++;
+                charPositionInLine=0;
+            }
+            p++;
+        }
+    }
+
+    @Override
+    public int LA(int i) {
+        if (i==0) {
+            return 0; //undefined
+        }
+        if (i<0) {
+            i++; //e.g., translate LA(-1) to the char at p-1
+            if (p+i-1<0) {
+                return CharStream.EOF; //invalid; no char before first char
+            }
+        }
+        if (p+i-1>=n) {
+            return CharStream.EOF;
+        }
+        return chars.charAt(p+i-1);
+    }
+
+    @Override
+    public String substring(int start, int stop) {
+        return chars.subSequence(start, stop+1).toString();
+    }
+
+    @Override
+    public String toString() {
+        return chars.toString();
+    }
+
+}
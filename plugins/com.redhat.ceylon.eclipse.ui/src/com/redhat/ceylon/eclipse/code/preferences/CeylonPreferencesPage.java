@@ -4,6 +4,7 @@ import static com.redhat.ceylon.compiler.typechecker.TypeChecker.LANGUAGE_MODULE
 import static com.redhat.ceylon.eclipse.core.builder.CeylonBuilder.getCeylonModulesOutputPath;
 import static com.redhat.ceylon.eclipse.core.builder.CeylonBuilder.getRepositoryPaths;
 import static com.redhat.ceylon.eclipse.core.builder.CeylonBuilder.isExplodeModulesEnabled;
+import static com.redhat.ceylon.eclipse.core.builder.CeylonBuilder.isParallelTypeCheckingEnabled;
 import static com.redhat.ceylon.eclipse.core.builder.CeylonBuilder.showWarnings;
 import static com.redhat.ceylon.eclipse.core.builder.CeylonNature.NATURE_ID;
 
@@ -61,10 +62,12 @@ public class CeylonPreferencesPage extends PropertyPage {
     private IPath outputPath;
     private boolean explodeModules;
     private boolean showCompilerWarnings=true;
+    private boolean parallelTypeChecking;
     boolean builderEnabled = false;
         
     private Button showWarnings;
     private Button enableExplodeModules;
+    private Button enableParallelTypeChecking;
 
     //TODO: fix copy/paste!
     public boolean isRepoValid() {
@@ -105,6 +108,8 @@ public class CeylonPreferencesPage extends PropertyPage {
         enableExplodeModules.setSelection(false);
         showCompilerWarnings=true;
         showWarnings.setSelection(true);
+        parallelTypeChecking=false;
+        enableParallelTypeChecking.setSelection(false);
         String defaultRepo = CeylonPlugin.getInstance().getCeylonRepository().getAbsolutePath();
         String externalRepo = System.getProperty("user.home") + "/.ceylon/repo";
         repoFolders.removeAll();
@@ -122,7 +127,7 @@ public class CeylonPreferencesPage extends PropertyPage {
         final IProject project = getSelectedProject();
 		//if (!embeddedRepo) ExportModuleWizard.persistDefaultRepositoryPath(repositoryPath);
 		new CeylonNature(outputPath, repositoryPaths,
-				explodeModules, !showCompilerWarnings)
+				explodeModules, !showCompilerWarnings, parallelTypeChecking)
 		                .addToProject(project);
     }
 
@@ -170,6 +175,11 @@ public class CeylonPreferencesPage extends PropertyPage {
         showWarnings.setSelection(showCompilerWarnings);
         showWarnings.setEnabled(true);
         
+        enableParallelTypeChecking = new Button(composite, SWT.CHECK | SWT.LEFT | SWT.WRAP);
+        enableParallelTypeChecking.setText("Typecheck source files in parallel during full builds");
+        enableParallelTypeChecking.setSelection(parallelTypeChecking);
+        enableParallelTypeChecking.setEnabled(builderEnabled);
+        
         addSelectOutputSection(parent);
         addSelectRepoSection(parent);
         
@@ -179,6 +189,7 @@ public class CeylonPreferencesPage extends PropertyPage {
                 new CeylonNature().addToProject(getSelectedProject());
                 enableBuilder.setEnabled(false);
                 enableExplodeModules.setEnabled(true);
+                enableParallelTypeChecking.setEnabled(true);
                 builderEnabled=true;
             }
             @Override
@@ -203,6 +214,15 @@ public class CeylonPreferencesPage extends PropertyPage {
             public void widgetDefaultSelected(SelectionEvent e) {}
         });
         
+        enableParallelTypeChecking.addSelectionListener(new SelectionListener() {
+            @Override
+            public void widgetSelected(SelectionEvent e) {
+            	parallelTypeChecking = !parallelTypeChecking;
+            }
+            @Override
+            public void widgetDefaultSelected(SelectionEvent e) {}
+        });
+        
         if (!isRepoValid()) {
             setErrorMessage("Please select a module repository containing the language module");
         }
@@ -442,6 +462,7 @@ public class CeylonPreferencesPage extends PropertyPage {
 			repositoryPaths.addAll(Arrays.asList(getRepositoryPaths(project)));
 	        explodeModules = isExplodeModulesEnabled(project);
 	        showCompilerWarnings = showWarnings(project);
+	        parallelTypeChecking = isParallelTypeCheckingEnabled(project);
 	        outputPath = getCeylonModulesOutputPath(project);
 	        if (outputPath==null) {
 	        	outputPath = getDefaultOutputPath(project);
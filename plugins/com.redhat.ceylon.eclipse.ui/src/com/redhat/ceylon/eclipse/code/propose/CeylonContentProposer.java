@@ -36,9 +36,7 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.TreeMap;
-import java.util.TreeSet;
 
 import org.antlr.runtime.CommonToken;
 import org.antlr.runtime.Token;
@@ -119,8 +117,13 @@ public class CeylonContentProposer {
         }
         
         CeylonParseController cpc = (CeylonParseController) controller;
-        cpc.parse(viewer.getDocument(), new NullProgressMonitor(), null);
-        cpc.getHandler().updateAnnotations();
+        //if the scheduler already typechecked the current
+        //contents of the document, there's no need to do
+        //it again
+        if (!cpc.isUpToDate(viewer.getDocument())) {
+            cpc.parse(viewer.getDocument(), new NullProgressMonitor(), null);
+            cpc.getHandler().updateAnnotations();
+        }
         List<CommonToken> tokens = cpc.getTokens(); 
         if (tokens==null) {
             return null;
@@ -164,7 +167,7 @@ public class CeylonContentProposer {
         
         //finally, construct and sort proposals
         Map<String, DeclarationWithProximity> proposals = getProposals(node, result.prefix, result.isMemberOp, rn);
-		Set<DeclarationWithProximity> sortedProposals = sortProposals(result.prefix, rtv.getType(), proposals);
+		List<DeclarationWithProximity> sortedProposals = sortProposals(result.prefix, rtv.getType(), proposals);
 		ICompletionProposal[] completions = constructCompletions(offset, result.prefix, sortedProposals,
                     cpc, node, adjustedToken, result.isMemberOp, viewer.getDocument());
 		return completions;
@@ -470,7 +473,7 @@ public class CeylonContentProposer {
     }
     
     private static ICompletionProposal[] constructCompletions(int offset, String prefix, 
-            Set<DeclarationWithProximity> set, CeylonParseController cpc, Node node, 
+            List<DeclarationWithProximity> set, CeylonParseController cpc, Node node, 
             CommonToken token, boolean memberOp, IDocument doc) {
         List<ICompletionProposal> result = new ArrayList<ICompletionProposal>();
         if (node instanceof Tree.Import && offset>token.getStopIndex()+1) {
@@ -926,70 +929,93 @@ public class CeylonContentProposer {
         return getDocumentation(getReferencedNode(d, getCompilationUnit(cpc, d)));
     }*/
     
-    private static Set<DeclarationWithProximity> sortProposals(final String prefix, 
+    /**
+     * The properties of a proposal the sort order depends
+     * on, computed once per proposal, instead of once per
+     * comparison.
+     */
+    private static final class SortKey {
+        final DeclarationWithProximity dwp;
+        final String name;
+        final boolean upperCase;
+        final boolean lowerCase;
+        final boolean bottom;
+        final boolean assigns;
+        final boolean typed;
+        SortKey(DeclarationWithProximity dwp, ProducedType requiredType) {
+            this.dwp = dwp;
+            name = dwp.getName();
+            upperCase = isUpperCase(name.charAt(0));
+            lowerCase = isLowerCase(name.charAt(0));
+            ProducedType type = type(dwp.getDeclaration());
+            bottom = type!=null && type.getDeclaration() instanceof BottomType;
+            assigns = requiredType!=null && type!=null && 
+                    type.isSubtypeOf(requiredType);
+            typed = dwp.getDeclaration() instanceof TypedDeclaration;
+        }
+    }
+    
+    private static List<DeclarationWithProximity> sortProposals(final String prefix, 
             final ProducedType type, Map<String, DeclarationWithProximity> proposals) {
-        Set<DeclarationWithProximity> set = new TreeSet<DeclarationWithProximity>(
-                new Comparator<DeclarationWithProximity>() {
-                    public int compare(DeclarationWithProximity x, DeclarationWithProximity y) {
-                        ProducedType xtype = type(x.getDeclaration());
-                        ProducedType ytype = type(y.getDeclaration());
-                        boolean xbottom = xtype!=null && xtype.getDeclaration() instanceof BottomType;
-                        boolean ybottom = ytype!=null && ytype.getDeclaration() instanceof BottomType;
-                        if (xbottom && !ybottom) {
+        List<SortKey> keys = new ArrayList<SortKey>(proposals.size());
+        for (DeclarationWithProximity dwp: proposals.values()) {
+            keys.add(new SortKey(dwp, type));
+        }
+        final boolean upperCasePrefix = !prefix.isEmpty() && 
+                isUpperCase(prefix.charAt(0));
+        Collections.sort(keys, new Comparator<SortKey>() {
+                    public int compare(SortKey x, SortKey y) {
+                        if (x.bottom && !y.bottom) {
                             return 1;
                         }
-                        if (ybottom && !xbottom) {
+                        if (y.bottom && !x.bottom) {
                             return -1;
                         }
-                        String xName = x.getName();
-                        String yName = y.getName();
-                        if (!prefix.isEmpty() && isUpperCase(prefix.charAt(0))) {
-                            if (isLowerCase(xName.charAt(0)) && 
-                                    isUpperCase(yName.charAt(0))) {
+                        if (upperCasePrefix) {
+                            if (x.lowerCase && y.upperCase) {
                                 return 1;
                             }
-                            else if (isUpperCase(xName.charAt(0)) && 
-                                    isLowerCase(yName.charAt(0))) {
+                            else if (x.upperCase && y.lowerCase) {
                                 return -1;
                             }
                         }
                         if (type!=null) {
-                            boolean xassigns = xtype!=null && xtype.isSubtypeOf(type);
-                            boolean yassigns = ytype!=null && ytype.isSubtypeOf(type);
-                            if (xassigns && !yassigns) {
+                            if (x.assigns && !y.assigns) {
                                 return -1;
                             }
-                            if (yassigns && !xassigns) {
+                            if (y.assigns && !x.assigns) {
                                 return 1;
                             }
-                            if (xassigns && yassigns) {
-                                boolean xtd = x.getDeclaration() instanceof TypedDeclaration;
-                                boolean ytd = y.getDeclaration() instanceof TypedDeclaration;
-                                if (xtd && !ytd) {
+                            if (x.assigns && y.assigns) {
+                                if (x.typed && !y.typed) {
                                     return -1;
                                 }
-                                if (ytd && !xtd) {
+                                if (y.typed && !x.typed) {
                                     return 1;
                                 }
                             }
                         }
-                        if (x.getProximity()!=y.getProximity()) {
-                            return new Integer(x.getProximity()).compareTo(y.getProximity());
+                        int xProximity = x.dwp.getProximity();
+                        int yProximity = y.dwp.getProximity();
+                        if (xProximity!=yProximity) {
+                            return xProximity<yProximity ? -1 : 1;
                         }
                         //if (!prefix.isEmpty() && isLowerCase(prefix.charAt(0))) {
-                        if (isLowerCase(xName.charAt(0)) && 
-                                isUpperCase(yName.charAt(0))) {
+                        if (x.lowerCase && y.upperCase) {
                             return -1;
                         }
-                        else if (isUpperCase(xName.charAt(0)) && 
-                                isLowerCase(yName.charAt(0))) {
+                        else if (x.upperCase && y.lowerCase) {
                             return 1;
                         }
-                        return xName.compareTo(yName);
+                        return x.name.compareTo(y.name);
                     }
                 });
-        set.addAll(proposals.values());
-        return set;
+        List<DeclarationWithProximity> result = 
+                new ArrayList<DeclarationWithProximity>(keys.size());
+        for (SortKey key: keys) {
+            result.add(key.dwp);
+        }
+        return result;
     }
     
     static ProducedType type(Declaration d) {
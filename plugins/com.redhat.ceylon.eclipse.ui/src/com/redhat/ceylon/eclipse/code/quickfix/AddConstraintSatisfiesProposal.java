@@ -1,7 +1,7 @@
 package com.redhat.ceylon.eclipse.code.quickfix;
 
 import static com.redhat.ceylon.eclipse.code.outline.CeylonLabelProvider.CORRECTION;
-import static com.redhat.ceylon.eclipse.core.builder.CeylonBuilder.getUnits;
+import static com.redhat.ceylon.eclipse.core.builder.PhasedUnitIndex.getPhasedUnit;
 
 import java.util.ArrayList;
 import java.util.Collection;
@@ -73,25 +73,23 @@ public class AddConstraintSatisfiesProposal extends ChangeCorrectionProposal {
 
         String changeText = createMissingSatisfiedTypesText(typeParam, missingSatisfiedTypes);
 
-        for (PhasedUnit unit: getUnits(project)) {
-            if (typeParam.getUnit().equals(unit.getUnit())) {
-                Node typeParamCont = determineTypeParamCont(cu, typeParam);
+        PhasedUnit unit = getPhasedUnit(project, typeParam.getUnit());
+        if (unit!=null) {
+            Node typeParamCont = determineTypeParamCont(cu, typeParam);
 
-                if( typeParamCont instanceof Tree.ClassDefinition ) {
-                    Tree.ClassDefinition classDefinition = (ClassDefinition) typeParamCont;
-                    addConstraintSatisfiesProposals(typeParam, changeText, unit, proposals, classDefinition.getTypeConstraintList(), classDefinition.getClassBody().getStartIndex());
-                }
-                else if( typeParamCont instanceof Tree.InterfaceDefinition ) {
-                    Tree.InterfaceDefinition interfaceDefinition = (Tree.InterfaceDefinition) typeParamCont;
-                    addConstraintSatisfiesProposals(typeParam, changeText, unit, proposals, interfaceDefinition.getTypeConstraintList(), interfaceDefinition.getInterfaceBody().getStartIndex());
-                }
-                else if( typeParamCont instanceof Tree.MethodDefinition ) {
-                    Tree.MethodDefinition methodDefinition = (Tree.MethodDefinition)typeParamCont;
-                    addConstraintSatisfiesProposals(typeParam, changeText, unit, proposals, methodDefinition.getTypeConstraintList(), methodDefinition.getBlock().getStartIndex());
-                }
-                break;
+            if( typeParamCont instanceof Tree.ClassDefinition ) {
+                Tree.ClassDefinition classDefinition = (ClassDefinition) typeParamCont;
+                addConstraintSatisfiesProposals(typeParam, changeText, unit, proposals, classDefinition.getTypeConstraintList(), classDefinition.getClassBody().getStartIndex());
             }
-        }        
+            else if( typeParamCont instanceof Tree.InterfaceDefinition ) {
+                Tree.InterfaceDefinition interfaceDefinition = (Tree.InterfaceDefinition) typeParamCont;
+                addConstraintSatisfiesProposals(typeParam, changeText, unit, proposals, interfaceDefinition.getTypeConstraintList(), interfaceDefinition.getInterfaceBody().getStartIndex());
+            }
+            else if( typeParamCont instanceof Tree.MethodDefinition ) {
+                Tree.MethodDefinition methodDefinition = (Tree.MethodDefinition)typeParamCont;
+                addConstraintSatisfiesProposals(typeParam, changeText, unit, proposals, methodDefinition.getTypeConstraintList(), methodDefinition.getBlock().getStartIndex());
+            }
+        }
     }
 
     private static void addConstraintSatisfiesProposals(TypeParameter typeParam, String missingSatisfiedType, PhasedUnit unit, Collection<ICompletionProposal> proposals, TypeConstraintList typeConstraints, Integer typeContainerBodyStartIndex) {
@@ -18,7 +18,7 @@ import static com.redhat.ceylon.eclipse.code.quickfix.Util.getLevenshteinDistanc
 import static com.redhat.ceylon.eclipse.core.builder.CeylonBuilder.PROBLEM_MARKER_ID;
 import static com.redhat.ceylon.eclipse.core.builder.CeylonBuilder.getFile;
 import static com.redhat.ceylon.eclipse.core.builder.CeylonBuilder.getProjectTypeChecker;
-import static com.redhat.ceylon.eclipse.core.builder.CeylonBuilder.getUnits;
+import static com.redhat.ceylon.eclipse.core.builder.PhasedUnitIndex.getPhasedUnit;
 
 import java.util.ArrayList;
 import java.util.Collection;
@@ -75,6 +75,7 @@ import com.redhat.ceylon.eclipse.code.editor.Util;
 import com.redhat.ceylon.eclipse.code.outline.CeylonLabelProvider;
 import com.redhat.ceylon.eclipse.code.parse.CeylonParseController;
 import com.redhat.ceylon.eclipse.core.builder.MarkerCreator;
+import com.redhat.ceylon.eclipse.core.builder.PhasedUnitIndex;
 import com.redhat.ceylon.eclipse.util.FindContainerVisitor;
 import com.redhat.ceylon.eclipse.util.FindDeclarationVisitor;
 import com.redhat.ceylon.eclipse.util.FindStatementVisitor;
@@ -828,19 +829,15 @@ public class CeylonQuickFixAssistant {
             IProject project, String def, String desc, Image image, Declaration typeDec,
             ProducedType returnType, List<ProducedType> paramTypes) {
         if (typeDec!=null && typeDec instanceof ClassOrInterface) {
-            for (PhasedUnit unit: getUnits(project)) {
-                if (typeDec.getUnit().equals(unit.getUnit())) {
-                    //TODO: "object" declarations?
-                    FindDeclarationVisitor fdv = new FindDeclarationVisitor(typeDec);
-                    getRootNode(unit).visit(fdv);
-                    Tree.Declaration decNode = fdv.getDeclarationNode();
-                    Tree.Body body = getBody(decNode);
-                    if (body!=null) {
-                        CreateProposal.addCreateMemberProposal(proposals, def, desc, 
-                                image, typeDec, unit, decNode, body, returnType,
-                                paramTypes);
-                        break;
-                    }
+            PhasedUnit unit = getPhasedUnit(project, typeDec.getUnit());
+            if (unit!=null) {
+                //TODO: "object" declarations?
+                Tree.Declaration decNode = getDeclarationNode(project, unit, typeDec);
+                Tree.Body body = getBody(decNode);
+                if (body!=null) {
+                    CreateProposal.addCreateMemberProposal(proposals, def, desc,
+                            image, typeDec, unit, decNode, body, returnType,
+                            paramTypes);
                 }
             }
         }
@@ -922,35 +919,32 @@ public class CeylonQuickFixAssistant {
             ProblemLocation problem, IProject project, Node node, ProducedType type, 
             Declaration dec, boolean intersect) {
         if (dec!=null) {
-            for (PhasedUnit unit: getUnits(project)) {
-                if (dec.getUnit().equals(unit.getUnit())) {
-                    ProducedType t = null;
-                    Node typeNode = null;
-                    
-                    if( dec instanceof TypeParameter) {
-                        t = ((TypeParameter) dec).getType();
-                        typeNode = node;
-                    }
-                    
-                    if( dec instanceof TypedDeclaration ) {
-                        TypedDeclaration typedDec = (TypedDeclaration)dec;
-                        FindDeclarationVisitor fdv = new FindDeclarationVisitor(typedDec);
-                        getRootNode(unit).visit(fdv);
-                        Tree.TypedDeclaration decNode = (Tree.TypedDeclaration) fdv.getDeclarationNode();
-                        if (decNode!=null) {
-                            typeNode = decNode.getType();
-                            if (typeNode!=null) {
-                                t=((Tree.Type)typeNode).getTypeModel();
-                            }
+            PhasedUnit unit = getPhasedUnit(project, dec.getUnit());
+            if (unit!=null) {
+                ProducedType t = null;
+                Node typeNode = null;
+
+                if( dec instanceof TypeParameter) {
+                    t = ((TypeParameter) dec).getType();
+                    typeNode = node;
+                }
+
+                if( dec instanceof TypedDeclaration ) {
+                    Tree.TypedDeclaration decNode = (Tree.TypedDeclaration)
+                            getDeclarationNode(project, unit, dec);
+                    if (decNode!=null) {
+                        typeNode = decNode.getType();
+                        if (typeNode!=null) {
+                            t=((Tree.Type)typeNode).getTypeModel();
                         }
                     }
-                    
-                    if (t != null && typeNode != null) {
-                        ProducedType newType = intersect ? 
-                                intersectionType(t, type, unit.getUnit()) : unionType(t, type, unit.getUnit());
-                        ChangeTypeProposal.addChangeTypeProposal(typeNode, problem, 
-                                proposals, dec, newType, getFile(unit), unit.getCompilationUnit());
-                    }
+                }
+
+                if (t != null && typeNode != null) {
+                    ProducedType newType = intersect ?
+                            intersectionType(t, type, unit.getUnit()) : unionType(t, type, unit.getUnit());
+                    ChangeTypeProposal.addChangeTypeProposal(typeNode, problem,
+                            proposals, dec, newType, getFile(unit), unit.getCompilationUnit());
                 }
             }
         }
@@ -1034,20 +1028,16 @@ public class CeylonQuickFixAssistant {
     private void addCreateParameterProposals(Collection<ICompletionProposal> proposals,
             IProject project, String def, String desc, Declaration typeDec, ProducedType t) {
         if (typeDec!=null && typeDec instanceof Functional) {
-            for (PhasedUnit unit: getUnits(project)) {
-                if (typeDec.getUnit().equals(unit.getUnit())) {
-                    FindDeclarationVisitor fdv = new FindDeclarationVisitor(typeDec);
-                    getRootNode(unit).visit(fdv);
-                    Tree.Declaration decNode = fdv.getDeclarationNode();
-                    Tree.ParameterList paramList = getParameters(decNode);
-                    if (paramList!=null) {
-                        if (!paramList.getParameters().isEmpty()) {
-                            def = ", " + def;
-                        }
-                        CreateProposal.addCreateParameterProposal(proposals, def, desc, 
-                        		ADD, typeDec, unit, decNode, paramList, t);
-                        break;
+            PhasedUnit unit = getPhasedUnit(project, typeDec.getUnit());
+            if (unit!=null) {
+                Tree.Declaration decNode = getDeclarationNode(project, unit, typeDec);
+                Tree.ParameterList paramList = getParameters(decNode);
+                if (paramList!=null) {
+                    if (!paramList.getParameters().isEmpty()) {
+                        def = ", " + def;
                     }
+                    CreateProposal.addCreateParameterProposal(proposals, def, desc,
+                    		ADD, typeDec, unit, decNode, paramList, t);
                 }
             }
         }
@@ -1056,26 +1046,41 @@ public class CeylonQuickFixAssistant {
     private void addCreateParameterAndAttributeProposals(Collection<ICompletionProposal> proposals,
             IProject project, String pdef, String adef, String desc, Declaration typeDec, ProducedType t) {
         if (typeDec!=null && typeDec instanceof ClassOrInterface) {
-            for (PhasedUnit unit: getUnits(project)) {
-                if (typeDec.getUnit().equals(unit.getUnit())) {
-                    FindDeclarationVisitor fdv = new FindDeclarationVisitor(typeDec);
-                    getRootNode(unit).visit(fdv);
-                    Tree.Declaration decNode = fdv.getDeclarationNode();
-                    Tree.ParameterList paramList = getParameters(decNode);
-                    Tree.Body body = getBody(decNode);
-                    if (body!=null && paramList!=null) {
-                        if (!paramList.getParameters().isEmpty()) {
-                            pdef = ", " + pdef;
-                        }
-                        CreateProposal.addCreateParameterAndAttributeProposal(proposals, pdef, 
-                                adef, desc, ADD, typeDec, unit, decNode, 
-                                paramList, body, t);
+            PhasedUnit unit = getPhasedUnit(project, typeDec.getUnit());
+            if (unit!=null) {
+                Tree.Declaration decNode = getDeclarationNode(project, unit, typeDec);
+                Tree.ParameterList paramList = getParameters(decNode);
+                Tree.Body body = getBody(decNode);
+                if (body!=null && paramList!=null) {
+                    if (!paramList.getParameters().isEmpty()) {
+                        pdef = ", " + pdef;
                     }
+                    CreateProposal.addCreateParameterAndAttributeProposal(proposals, pdef,
+                            adef, desc, ADD, typeDec, unit, decNode,
+                            paramList, body, t);
                 }
             }
         }
     }
 
+    /**
+     * @return the node of the given declaration of the
+     *         given unit, in the tree of the current editor
+     *         if it is open
+     */
+    private Tree.Declaration getDeclarationNode(IProject project, PhasedUnit unit,
+            Declaration dec) {
+        Tree.CompilationUnit rootNode = getRootNode(unit);
+        if (rootNode==unit.getCompilationUnit()) {
+            return PhasedUnitIndex.getDeclarationNode(project, dec);
+        }
+        else {
+            FindDeclarationVisitor fdv = new FindDeclarationVisitor(dec);
+            rootNode.visit(fdv);
+            return fdv.getDeclarationNode();
+        }
+    }
+
     private Tree.CompilationUnit getRootNode(PhasedUnit unit) {
         IEditorPart ce = Util.getCurrentEditor();
         if (ce instanceof CeylonEditor) {
@@ -1120,11 +1125,9 @@ public class CeylonQuickFixAssistant {
     private void addCreateEnumProposal(Collection<ICompletionProposal> proposals,
             IProject project, String def, String desc, Image image, 
             Tree.CompilationUnit cu, Tree.TypeDeclaration cd) {
-        for (PhasedUnit unit: getUnits(project)) {
-            if (unit.getUnit().equals(cu.getUnit())) {
-                CreateProposal.addCreateEnumProposal(proposals, def, desc, image, unit, cd);
-                break;
-            }
+        PhasedUnit unit = getPhasedUnit(project, cu.getUnit());
+        if (unit!=null) {
+            CreateProposal.addCreateEnumProposal(proposals, def, desc, image, unit, cd);
         }
     }
 
@@ -1136,12 +1139,10 @@ public class CeylonQuickFixAssistant {
         cu.visit(fsv);
         //if (!fsv.isToplevel()) {
             Tree.Statement statement = fsv.getStatement();
-            for (PhasedUnit unit: getUnits(project)) {
-                if (unit.getUnit().equals(cu.getUnit())) {
-                    CreateProposal.addCreateProposal(proposals, def, true, desc, image, 
-                    		unit, statement, returnType, paramTypes);
-                    break;
-                }
+            PhasedUnit unit = getPhasedUnit(project, cu.getUnit());
+            if (unit!=null) {
+                CreateProposal.addCreateProposal(proposals, def, true, desc, image,
+                		unit, statement, returnType, paramTypes);
             }
         //}
     }
@@ -1153,12 +1154,10 @@ public class CeylonQuickFixAssistant {
         FindStatementVisitor fsv = new FindStatementVisitor(node, true);
         cu.visit(fsv);
         Tree.Statement statement = fsv.getStatement();
-        for (PhasedUnit unit: getUnits(project)) {
-            if (unit.getUnit().equals(cu.getUnit())) {
-                CreateProposal.addCreateProposal(proposals, def+"\n", false, desc, image, 
-                		unit, statement, returnType, paramTypes);
-                break;
-            }
+        PhasedUnit unit = getPhasedUnit(project, cu.getUnit());
+        if (unit!=null) {
+            CreateProposal.addCreateProposal(proposals, def+"\n", false, desc, image,
+            		unit, statement, returnType, paramTypes);
         }
     }
 
@@ -1320,16 +1319,12 @@ public class CeylonQuickFixAssistant {
     private void addAddAnnotationProposal(Node node, String annotation, String desc,
             Declaration dec, Collection<ICompletionProposal> proposals, IProject project) {
         if (dec!=null) {
-            for (PhasedUnit unit: getUnits(project)) {
-                if (dec.getUnit().equals(unit.getUnit())) {
-                    FindDeclarationVisitor fdv = new FindDeclarationVisitor(dec);
-                    getRootNode(unit).visit(fdv);
-                    Tree.Declaration decNode = fdv.getDeclarationNode();
-                    if (decNode!=null) {
-                        AddAnnotionProposal.addAddAnnotationProposal(annotation, desc, dec,
-                                proposals, unit, decNode);
-                    }
-                    break;
+            PhasedUnit unit = getPhasedUnit(project, dec.getUnit());
+            if (unit!=null) {
+                Tree.Declaration decNode = getDeclarationNode(project, unit, dec);
+                if (decNode!=null) {
+                    AddAnnotionProposal.addAddAnnotationProposal(annotation, desc, dec,
+                            proposals, unit, decNode);
                 }
             }
         }
@@ -1338,17 +1333,13 @@ public class CeylonQuickFixAssistant {
     private void addRemoveAnnotationProposal(Node node, String annotation, String desc,
             Declaration dec, Collection<ICompletionProposal> proposals, IProject project) {
         if (dec!=null) {
-            for (PhasedUnit unit: getUnits(project)) {
-                if (dec.getUnit().equals(unit.getUnit())) {
-                    //TODO: "object" declarations?
-                    FindDeclarationVisitor fdv = new FindDeclarationVisitor(dec);
-                    getRootNode(unit).visit(fdv);
-                    Tree.Declaration decNode = fdv.getDeclarationNode();
-                    if (decNode!=null) {
-                        RemoveAnnotionProposal.addRemoveAnnotationProposal(annotation, desc, dec,
-                                proposals, unit, decNode);
-                    }
-                    break;
+            PhasedUnit unit = getPhasedUnit(project, dec.getUnit());
+            if (unit!=null) {
+                //TODO: "object" declarations?
+                Tree.Declaration decNode = getDeclarationNode(project, unit, dec);
+                if (decNode!=null) {
+                    RemoveAnnotionProposal.addRemoveAnnotationProposal(annotation, desc, dec,
+                            proposals, unit, decNode);
                 }
             }
         }
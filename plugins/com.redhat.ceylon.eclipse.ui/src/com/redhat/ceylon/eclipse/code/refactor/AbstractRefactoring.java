@@ -13,14 +13,23 @@ import static com.redhat.ceylon.eclipse.ui.CeylonResources.CEYLON_RENAME;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.antlr.runtime.CommonToken;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.jface.resource.ImageDescriptor;
 import org.eclipse.jface.text.IDocument;
 import org.eclipse.jface.text.ITextSelection;
 import org.eclipse.jface.text.Region;
+import org.eclipse.ltk.core.refactoring.CompositeChange;
 import org.eclipse.ltk.core.refactoring.DocumentChange;
 import org.eclipse.ltk.core.refactoring.Refactoring;
 import org.eclipse.ltk.core.refactoring.TextChange;
@@ -40,6 +49,7 @@ import com.redhat.ceylon.eclipse.code.editor.Util;
 import com.redhat.ceylon.eclipse.code.parse.CeylonParseController;
 import com.redhat.ceylon.eclipse.code.parse.CeylonTokenColorer;
 import com.redhat.ceylon.eclipse.core.builder.CeylonBuilder;
+import com.redhat.ceylon.eclipse.core.builder.ReferenceIndex;
 
 public abstract class AbstractRefactoring extends Refactoring {
     
@@ -177,9 +187,25 @@ public abstract class AbstractRefactoring extends Refactoring {
 		return units;
 	}
 
-	protected int countDeclarationOccurrences() {
-		int count = 0;
+	/**
+	 * @return the units of the project and its referencing
+	 *         projects in which the given name occurs, and
+	 *         which could therefore refer to a declaration
+	 *         with that name
+	 */
+	protected List<PhasedUnit> getAllUnits(String name) {
+		List<PhasedUnit> units = new ArrayList<PhasedUnit>();
 		for (PhasedUnit pu: getAllUnits()) {
+			if (ReferenceIndex.mayReference(pu.getCompilationUnit(), name)) {
+				units.add(pu);
+			}
+		}
+		return units;
+	}
+
+	protected int countDeclarationOccurrences(String name) {
+		int count = 0;
+		for (PhasedUnit pu: getAllUnits(name)) {
 		    if (searchInFile(pu)) {
 		        count += countReferences(pu.getCompilationUnit());
 		    }
@@ -194,4 +220,92 @@ public abstract class AbstractRefactoring extends Refactoring {
 		return 0;
 	}
 
+	/**
+	 * Compute the changes to the units in which the given
+	 * name occurs, other than the unit of a dirty editor,
+	 * on several threads, and add them to the given change
+	 * in the order of the units. If the change to any unit
+	 * can't be computed, the whole refactoring fails.
+	 */
+	void addChangesInFiles(String name, CompositeChange cc, 
+			final IProgressMonitor pm) throws CoreException {
+		List<Callable<TextFileChange>> tasks = 
+				new ArrayList<Callable<TextFileChange>>();
+		for (final PhasedUnit pu: getAllUnits(name)) {
+			if (searchInFile(pu)) {
+				tasks.add(new Callable<TextFileChange>() {
+					@Override
+					public TextFileChange call() {
+						synchronized (pm) {
+							if (pm.isCanceled()) {
+								return null;
+							}
+							pm.subTask(pu.getUnitFile().getName());
+						}
+						try {
+							return createChangeInFile(pu);
+						}
+						finally {
+							synchronized (pm) {
+								pm.worked(1);
+							}
+						}
+					}
+				});
+			}
+		}
+		pm.beginTask(getName(), tasks.size());
+		int threads = Math.min(tasks.size(), 
+				Runtime.getRuntime().availableProcessors());
+		List<Future<TextFileChange>> results;
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(threads, 1));
+		try {
+			results = executor.invokeAll(tasks);
+		}
+		catch (InterruptedException e) {
+			throw new OperationCanceledException();
+		}
+		finally {
+			executor.shutdown();
+		}
+		if (pm.isCanceled()) {
+			throw new OperationCanceledException();
+		}
+		for (Future<TextFileChange> result: results) {
+			try {
+				TextFileChange tfc = result.get();
+				if (tfc!=null) {
+					cc.add(tfc);
+				}
+			}
+			catch (InterruptedException e) {
+				throw new OperationCanceledException();
+			}
+			catch (ExecutionException e) {
+				//don't apply a partial refactoring
+				Throwable cause = e.getCause();
+				if (cause instanceof CoreException) {
+					throw (CoreException) cause;
+				}
+				else if (cause instanceof RuntimeException) {
+					throw (RuntimeException) cause;
+				}
+				else if (cause instanceof Error) {
+					throw (Error) cause;
+				}
+				else {
+					throw new RuntimeException(cause);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the change to the given unit, or null if it
+	 *         is not affected by this refactoring
+	 */
+	TextFileChange createChangeInFile(PhasedUnit pu) {
+		return null;
+	}
+
 }
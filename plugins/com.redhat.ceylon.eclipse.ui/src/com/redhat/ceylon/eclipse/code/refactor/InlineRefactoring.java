@@ -3,6 +3,7 @@ package com.redhat.ceylon.eclipse.code.refactor;
 import static com.redhat.ceylon.eclipse.code.parse.CeylonSourcePositionLocator.belongsToProject;
 import static com.redhat.ceylon.eclipse.code.parse.CeylonSourcePositionLocator.getTokenIndexAtCharacter;
 import static com.redhat.ceylon.eclipse.code.resolve.CeylonReferenceResolver.getReferencedDeclaration;
+import static com.redhat.ceylon.eclipse.core.builder.PhasedUnitIndex.getPhasedUnit;
 
 import java.util.List;
 
@@ -36,13 +37,17 @@ import com.redhat.ceylon.compiler.typechecker.tree.Tree.ImportMemberOrType;
 import com.redhat.ceylon.compiler.typechecker.tree.Tree.SequencedArgument;
 import com.redhat.ceylon.compiler.typechecker.tree.Tree.Term;
 import com.redhat.ceylon.compiler.typechecker.tree.Visitor;
-import com.redhat.ceylon.eclipse.core.builder.CeylonBuilder;
 import com.redhat.ceylon.eclipse.util.FindDeclarationVisitor;
 import com.redhat.ceylon.eclipse.util.FindReferenceVisitor;
 
 public class InlineRefactoring extends AbstractRefactoring {
 	private final Declaration declaration;
 	private boolean delete = true;
+	//the inlined declaration, for createChangeInFile()
+	private Tree.Declaration declarationNode;
+	private CompilationUnit declarationUnit;
+	private Tree.Term term;
+	private List<CommonToken> declarationTokens;
 
 	public InlineRefactoring(ITextEditor editor) {
 	    super(editor);
@@ -64,7 +69,8 @@ public class InlineRefactoring extends AbstractRefactoring {
 	}
 	
 	public int getCount() {
-        return declaration==null ? 0 : countDeclarationOccurrences();
+        return declaration==null ? 0 : 
+                countDeclarationOccurrences(declaration.getName());
 	}
 	
 	@Override
@@ -89,11 +95,9 @@ public class InlineRefactoring extends AbstractRefactoring {
             }
         }
         if (declarationUnit==null) {
-            for (final PhasedUnit pu: CeylonBuilder.getUnits(project)) {
-                if (pu.getUnit().equals(declaration.getUnit())) {
-                    declarationUnit = pu.getCompilationUnit();
-                    break;
-                }
+            PhasedUnit pu = getPhasedUnit(project, declaration.getUnit());
+            if (pu!=null) {
+                declarationUnit = pu.getCompilationUnit();
             }
         }
         FindDeclarationVisitor fdv = new FindDeclarationVisitor(declaration);
@@ -116,10 +120,10 @@ public class InlineRefactoring extends AbstractRefactoring {
 	public Change createChange(IProgressMonitor pm) throws CoreException,
 			OperationCanceledException {
 
-        Tree.Declaration declarationNode=null;
-        CompilationUnit declarationUnit=null;
-        Tree.Term term = null;
-        List<CommonToken> declarationTokens = null;
+        declarationNode=null;
+        declarationUnit=null;
+        term = null;
+        declarationTokens = null;
         if (declaration!=null) {
             if (searchInEditor()) {
                 CompilationUnit cu = editor.getParseController().getRootNode();
@@ -129,12 +133,10 @@ public class InlineRefactoring extends AbstractRefactoring {
                 }
             }
             if (declarationUnit==null) {
-                for (final PhasedUnit pu: getAllUnits()) {
-                    if (pu.getUnit().equals(declaration.getUnit())) {
-                        declarationUnit = pu.getCompilationUnit();
-                        declarationTokens = pu.getTokens();
-                        break;
-                    }
+                PhasedUnit pu = getPhasedUnit(project, declaration.getUnit());
+                if (pu!=null) {
+                    declarationUnit = pu.getCompilationUnit();
+                    declarationTokens = pu.getTokens();
                 }
             }
             FindDeclarationVisitor fdv = new FindDeclarationVisitor(declaration);
@@ -145,27 +147,31 @@ public class InlineRefactoring extends AbstractRefactoring {
 		
         CompositeChange cc = new CompositeChange(getName());
         if (declarationNode!=null) {
-            for (PhasedUnit pu: getAllUnits()) {
-                if (searchInFile(pu)) {
-                    TextFileChange tfc = newTextFileChange(pu);
-                    inlineInFile(tfc, cc, declarationNode, declarationUnit, 
-                            term, declarationTokens, 
-                            pu.getCompilationUnit(), pu.getTokens());
-                }
-    		}
+            addChangesInFiles(declaration.getName(), cc, pm);
         }
         if (searchInEditor()) {
             DocumentChange dc = newDocumentChange();
-            inlineInFile(dc, cc, declarationNode, declarationUnit, 
+            if (inlineInFile(dc, declarationNode, declarationUnit, 
                     term, declarationTokens,
                     editor.getParseController().getRootNode(), 
-                    editor.getParseController().getTokens());
+                    editor.getParseController().getTokens())) {
+                cc.add(dc);
+            }
         }
+        pm.done();
         return cc;
         
 	}
 
-    private void inlineInFile(TextChange tfc, CompositeChange cc, 
+	@Override
+	TextFileChange createChangeInFile(PhasedUnit pu) {
+	    TextFileChange tfc = newTextFileChange(pu);
+	    return inlineInFile(tfc, declarationNode, declarationUnit, 
+	            term, declarationTokens, 
+	            pu.getCompilationUnit(), pu.getTokens()) ? tfc : null;
+	}
+
+    private boolean inlineInFile(TextChange tfc, 
             Tree.Declaration declarationNode, CompilationUnit declarationUnit, 
             Tree.Term term, List<CommonToken> declarationTokens,
             CompilationUnit cu, List<CommonToken> tokens) {
@@ -174,9 +180,7 @@ public class InlineRefactoring extends AbstractRefactoring {
                 cu, tokens, tfc);
         deleteDeclaration(declarationNode, declarationUnit, cu, tokens, tfc);
         deleteImports(tfc, declarationNode, cu, tokens);
-        if (tfc.getEdit().hasChildren()) {
-            cc.add(tfc);
-        }
+        return tfc.getEdit().hasChildren();
     }
 
 	private void deleteImports(TextChange tfc, Tree.Declaration declarationNode, 
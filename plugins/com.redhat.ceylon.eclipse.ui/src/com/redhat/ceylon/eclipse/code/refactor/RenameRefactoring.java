@@ -5,8 +5,6 @@ import static com.redhat.ceylon.eclipse.code.parse.CeylonSourcePositionLocator.g
 import static com.redhat.ceylon.eclipse.code.resolve.CeylonReferenceResolver.getReferencedDeclaration;
 import static org.eclipse.ltk.core.refactoring.RefactoringStatus.createWarningStatus;
 
-import java.util.List;
-
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.OperationCanceledException;
@@ -69,7 +67,8 @@ public class RenameRefactoring extends AbstractRefactoring {
 	}
 	
 	public int getCount() {
-	    return declaration==null ? 0 : countDeclarationOccurrences();
+	    return declaration==null ? 0 : 
+	            countDeclarationOccurrences(declaration.getName());
 	}
 
 	@Override
@@ -104,27 +103,25 @@ public class RenameRefactoring extends AbstractRefactoring {
 
 	public Change createChange(IProgressMonitor pm) throws CoreException,
 			OperationCanceledException {
-        List<PhasedUnit> units = getAllUnits();
-        pm.beginTask(getName(), units.size());
         CompositeChange cc = new CompositeChange(getName());
-        int i=0;
-        for (PhasedUnit pu: units) {
-        	if (searchInFile(pu)) {
-        		TextFileChange tfc = newTextFileChange(pu);
-        		renameInFile(tfc, cc, pu.getCompilationUnit());
-        		pm.worked(i++);
-        	}
-        }
+        addChangesInFiles(declaration.getName(), cc, pm);
         if (searchInEditor()) {
         	DocumentChange dc = newDocumentChange();
-        	renameInFile(dc, cc, editor.getParseController().getRootNode());
-        	pm.worked(i++);
+        	if (renameInFile(dc, editor.getParseController().getRootNode())) {
+        	    cc.add(dc);
+        	}
         }
         pm.done();
         return cc;
 	}
 
-    private void renameInFile(TextChange tfc, CompositeChange cc, Tree.CompilationUnit root) {
+	@Override
+	TextFileChange createChangeInFile(PhasedUnit pu) {
+	    TextFileChange tfc = newTextFileChange(pu);
+	    return renameInFile(tfc, pu.getCompilationUnit()) ? tfc : null;
+	}
+
+    private boolean renameInFile(TextChange tfc, Tree.CompilationUnit root) {
         tfc.setEdit(new MultiTextEdit());
         if (declaration!=null) {
         	FindReferencesVisitor frv = new FindReferencesVisitor(declaration);
@@ -138,9 +135,7 @@ public class RenameRefactoring extends AbstractRefactoring {
         	    renameNode(tfc, node);
         	}
         }
-        if (tfc.getEdit().hasChildren()) {
-            cc.add(tfc);
-        }
+        return tfc.getEdit().hasChildren();
     }
 
 	private void renameNode(TextChange tfc, Node node) {
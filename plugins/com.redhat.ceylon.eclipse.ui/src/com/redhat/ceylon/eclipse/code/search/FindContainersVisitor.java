@@ -0,0 +1,79 @@
+package com.redhat.ceylon.eclipse.code.search;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import com.redhat.ceylon.compiler.typechecker.tree.NaturalVisitor;
+import com.redhat.ceylon.compiler.typechecker.tree.Node;
+import com.redhat.ceylon.compiler.typechecker.tree.Tree;
+import com.redhat.ceylon.compiler.typechecker.tree.Visitor;
+
+/**
+ * Like {@link FindContainerVisitor}, but finds the
+ * containing declarations of several nodes in a single
+ * pass over the tree.
+ */
+class FindContainersVisitor extends Visitor
+        implements NaturalVisitor {
+	final Set<Node> nodes;
+	final Map<Node,Tree.StatementOrArgument> declarations =
+	        new HashMap<Node,Tree.StatementOrArgument>();
+	Tree.StatementOrArgument currentDeclaration;
+	public Tree.StatementOrArgument getStatementOrArgument(Node node) {
+		return declarations.get(node);
+	}
+	public FindContainersVisitor(Set<Node> nodes) {
+		this.nodes=nodes;
+	}
+    @Override
+    public void visit(Tree.Import that) {
+        Tree.StatementOrArgument d = currentDeclaration;
+        currentDeclaration = that;
+        super.visit(that);
+        currentDeclaration = d;
+    }
+	@Override
+	public void visit(Tree.ObjectDefinition that) {
+		Tree.StatementOrArgument d = currentDeclaration;
+		currentDeclaration = that;
+		super.visit(that);
+		currentDeclaration = d;
+	}
+	@Override
+	public void visit(Tree.AnyAttribute that) {
+		Tree.StatementOrArgument d = currentDeclaration;
+		currentDeclaration = that;
+		super.visit(that);
+		currentDeclaration = d;
+	}
+	@Override
+	public void visit(Tree.AnyMethod that) {
+		Tree.StatementOrArgument d = currentDeclaration;
+		currentDeclaration = that;
+		super.visit(that);
+		currentDeclaration = d;
+	}
+	@Override
+	public void visit(Tree.AnyClass that) {
+		Tree.StatementOrArgument d = currentDeclaration;
+		currentDeclaration = that;
+		super.visit(that);
+		currentDeclaration = d;
+	}
+	@Override
+	public void visit(Tree.AnyInterface that) {
+		Tree.StatementOrArgument d = currentDeclaration;
+		currentDeclaration = that;
+		super.visit(that);
+		currentDeclaration = d;
+	}
+	public void visitAny(Node node) {
+		if (nodes.contains(node) && !declarations.containsKey(node)) {
+			declarations.put(node, currentDeclaration);
+		}
+		if (declarations.size()<nodes.size()) {
+			super.visitAny(node);
+		}
+	}
+}
@@ -9,6 +9,7 @@ import org.eclipse.ui.IEditorPart;
 
 import com.redhat.ceylon.compiler.typechecker.model.Declaration;
 import com.redhat.ceylon.compiler.typechecker.model.Parameter;
+import com.redhat.ceylon.compiler.typechecker.model.Setter;
 import com.redhat.ceylon.compiler.typechecker.model.TypeParameter;
 import com.redhat.ceylon.compiler.typechecker.tree.Node;
 import com.redhat.ceylon.compiler.typechecker.tree.Tree;
@@ -49,6 +50,18 @@ public class FindRefinementsAction extends AbstractFindAction {
                 return Collections.<Node>unmodifiableSet(nodes);
             }
             @Override
+            protected boolean mayContainNodes(Tree.CompilationUnit cu) {
+                Declaration refined = new FindReferenceVisitor(declaration).getDeclaration();
+                for (Declaration dec: cu.getUnit().getDeclarations()) {
+                    if (dec.refines(refined) ||
+                            dec instanceof Setter && ((Setter) dec).getGetter()
+                                    .refines(refined)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            @Override
             protected String labelString() {
                 return "refinements of";
             }
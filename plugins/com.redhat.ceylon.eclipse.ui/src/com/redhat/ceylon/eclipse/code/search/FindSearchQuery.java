@@ -26,6 +26,7 @@ import com.redhat.ceylon.eclipse.code.editor.CeylonEditor;
 import com.redhat.ceylon.eclipse.code.editor.Util;
 import com.redhat.ceylon.eclipse.code.parse.CeylonParseController;
 import com.redhat.ceylon.eclipse.core.builder.CeylonBuilder;
+import com.redhat.ceylon.eclipse.core.builder.ReferenceIndex;
 
 abstract class FindSearchQuery implements ISearchQuery {
 	
@@ -60,17 +61,25 @@ abstract class FindSearchQuery implements ISearchQuery {
 	public void findInUnits(PhasedUnits units) {
 		for (PhasedUnit pu: units.getPhasedUnits()) {
 			CompilationUnit cu = getRootNode(pu);
+			if (!mayContainNodes(cu)) {
+				continue;
+			}
 			Set<Node> nodes = getNodes(cu);
+			if (nodes.isEmpty()) {
+				continue;
+			}
 			//TODO: should really add these as we find them:
+			FindContainersVisitor fcv = new FindContainersVisitor(nodes);
+			cu.visit(fcv);
 			for (Node node: nodes) {
-				FindContainerVisitor fcv = new FindContainerVisitor(node);
-				cu.visit(fcv);
 				if (node.getToken()==null) {
 					//a synthetic node inserted in the tree
 				}
 				else {
+					Tree.StatementOrArgument container = 
+							fcv.getStatementOrArgument(node);
 					node = getIdentifyingNode(node);
-					result.addMatch(new CeylonSearchMatch(fcv.getStatementOrArgument(), 
+					result.addMatch(new CeylonSearchMatch(container, 
 							pu.getUnitFile(), 
 							node.getStartIndex(), 
 							node.getStopIndex()-node.getStartIndex()+1,
@@ -81,6 +90,15 @@ abstract class FindSearchQuery implements ISearchQuery {
 		}
 	}
 
+	/**
+	 * @return false if the given unit certainly does not
+	 *         contain any matches, so that it need not be
+	 *         visited
+	 */
+	protected boolean mayContainNodes(Tree.CompilationUnit cu) {
+		return ReferenceIndex.mayReference(cu, referencedDeclaration.getName());
+	}
+
     Tree.CompilationUnit getRootNode(PhasedUnit pu) {
         for (IEditorPart editor: page.getDirtyEditors()) {
             if (editor instanceof CeylonEditor) {
@@ -10,6 +10,7 @@ import org.eclipse.ui.IEditorPart;
 import com.redhat.ceylon.compiler.typechecker.model.Declaration;
 import com.redhat.ceylon.compiler.typechecker.model.TypeDeclaration;
 import com.redhat.ceylon.compiler.typechecker.model.TypeParameter;
+import com.redhat.ceylon.compiler.typechecker.model.TypedDeclaration;
 import com.redhat.ceylon.compiler.typechecker.tree.Node;
 import com.redhat.ceylon.compiler.typechecker.tree.Tree;
 import com.redhat.ceylon.eclipse.util.FindSubtypesVisitor;
@@ -45,6 +46,20 @@ public class FindSubtypesAction extends AbstractFindAction {
                 return Collections.<Node>unmodifiableSet(nodes);
             }
             @Override
+            protected boolean mayContainNodes(Tree.CompilationUnit cu) {
+                TypeDeclaration td = (TypeDeclaration) declaration;
+                for (Declaration dec: cu.getUnit().getDeclarations()) {
+                    if (dec instanceof TypeDeclaration && 
+                            ((TypeDeclaration) dec).inherits(td) ||
+                        dec instanceof TypedDeclaration &&
+                            ((TypedDeclaration) dec).getTypeDeclaration()!=null &&
+                            ((TypedDeclaration) dec).getTypeDeclaration().inherits(td)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            @Override
             protected String labelString() {
                 return "subtypes of";
             }
@@ -286,7 +286,7 @@ public class NewProjectWizard extends NewElementWizard implements IExecutableExt
             IPath outputPath = fSecondPage.getCeylonOutputLocation();
     		//if (!embeddedRepo) ExportModuleWizard.persistDefaultRepositoryPath(repositoryPath);
     		new CeylonNature(outputPath, repositoryPaths,
-    				enableJdtClassesDir, !showCompilerWarnings)
+    				enableJdtClassesDir, !showCompilerWarnings, false)
                             .addToProject(getCreatedElement().getProject());
 
             BasicNewProjectResourceWizard.updatePerspective(fConfigElement);
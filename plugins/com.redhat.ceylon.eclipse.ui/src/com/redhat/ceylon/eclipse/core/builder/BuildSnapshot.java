@@ -0,0 +1,255 @@
+package com.redhat.ceylon.eclipse.core.builder;
+
+import static com.redhat.ceylon.eclipse.core.builder.CeylonBuilder.getCeylonClassesOutputDirectory;
+import static com.redhat.ceylon.eclipse.core.builder.CeylonBuilder.getCeylonModulesOutputDirectory;
+import static com.redhat.ceylon.eclipse.core.builder.CeylonBuilder.getCeylonModulesOutputPath;
+import static com.redhat.ceylon.eclipse.core.builder.CeylonBuilder.getSourceFolders;
+import static com.redhat.ceylon.eclipse.core.builder.CeylonBuilder.getUserRepositories;
+import static com.redhat.ceylon.eclipse.core.builder.CeylonBuilder.isCeylonOrJava;
+import static com.redhat.ceylon.eclipse.core.builder.CeylonBuilder.isExplodeModulesEnabled;
+import static com.redhat.ceylon.eclipse.core.builder.CeylonBuilder.showWarnings;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceVisitor;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+
+import com.redhat.ceylon.compiler.typechecker.TypeChecker;
+import com.redhat.ceylon.eclipse.ui.CeylonPlugin;
+
+/**
+ * A record, kept in the plugin state location, of the
+ * sources and settings of a project as of its last
+ * successful build: the modification stamp of every 
+ * source file, the compiler version, the builder 
+ * settings, and the size and modification time of 
+ * every module archive the project was compiled against.
+ *
+ * When a full build is only needed because the model of
+ * the project is not in memory yet, as happens at
+ * startup, the project is still parsed and typechecked,
+ * but if the snapshot still matches the project, the 
+ * module archives it generated last time are reused 
+ * instead of being generated again.
+ */
+final class BuildSnapshot {
+
+    private static final String SOURCE_PREFIX = "source:";
+    private static final String ARCHIVE_PREFIX = "archive:";
+
+    private static final Map<IProject, BuildSnapshot> snapshots =
+            new HashMap<IProject, BuildSnapshot>();
+
+    private final Properties properties = new Properties();
+
+    private BuildSnapshot() {}
+
+    /**
+     * Compute a snapshot of the current sources and
+     * settings of the given project. The archives it
+     * depends on are only known once its modules were
+     * resolved, and are recorded by 
+     * {@link #recordArchives(Collection)}.
+     */
+    static BuildSnapshot create(IProject project) throws CoreException {
+        final BuildSnapshot snapshot = new BuildSnapshot();
+        Properties properties = snapshot.properties;
+        properties.setProperty("compilerVersion",
+                CeylonPlugin.getInstance().getBundle().getVersion().toString());
+        properties.setProperty("languageVersion",
+                TypeChecker.LANGUAGE_MODULE_VERSION);
+        properties.setProperty("outputPath",
+                String.valueOf(getCeylonModulesOutputPath(project)));
+        properties.setProperty("explodeModules",
+                String.valueOf(isExplodeModulesEnabled(project)));
+        properties.setProperty("showWarnings",
+                String.valueOf(showWarnings(project)));
+        int i=0;
+        for (String repository: getUserRepositories(project)) {
+            properties.setProperty("repository" + i++, repository);
+        }
+        for (IPath sourceFolder: getSourceFolders(project)) {
+            IResource folder = project.getWorkspace().getRoot()
+                    .findMember(sourceFolder);
+            if (folder!=null) {
+                folder.accept(new IResourceVisitor() {
+                    @Override
+                    public boolean visit(IResource resource)
+                            throws CoreException {
+                        if (resource instanceof IFile &&
+                                isCeylonOrJava((IFile) resource)) {
+                            snapshot.update((IFile) resource);
+                        }
+                        return true;
+                    }
+                });
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * @return the snapshot of the last successful build
+     *         of the given project, or null if there is
+     *         none
+     */
+    static BuildSnapshot read(IProject project) {
+        BuildSnapshot snapshot = snapshots.get(project);
+        if (snapshot!=null) {
+            return snapshot;
+        }
+        File file = getSnapshotFile(project);
+        if (!file.exists()) {
+            return null;
+        }
+        snapshot = new BuildSnapshot();
+        try {
+            InputStream stream = new FileInputStream(file);
+            try {
+                snapshot.properties.load(stream);
+            }
+            finally {
+                stream.close();
+            }
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+        snapshots.put(project, snapshot);
+        return snapshot;
+    }
+
+    /**
+     * Record the given snapshot as the one of the last
+     * successful build of the given project.
+     */
+    static void write(IProject project, BuildSnapshot snapshot) {
+        snapshots.put(project, snapshot);
+        File file = getSnapshotFile(project);
+        file.getParentFile().mkdirs();
+        try {
+            OutputStream stream = new FileOutputStream(file);
+            try {
+                snapshot.properties.store(stream,
+                        "Ceylon build snapshot of project " + project.getName());
+            }
+            finally {
+                stream.close();
+            }
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+            file.delete();
+        }
+    }
+
+    /**
+     * Forget the snapshot of the given project, before
+     * starting to change its generated archives.
+     */
+    static void delete(IProject project) {
+        snapshots.remove(project);
+        File file = getSnapshotFile(project);
+        if (file.exists()) {
+            file.delete();
+        }
+    }
+
+    /**
+     * Record the size and modification time of the module
+     * archives the project was resolved against.
+     */
+    void recordArchives(Collection<File> archives) {
+        for (File archive: archives) {
+            properties.setProperty(ARCHIVE_PREFIX + archive.getAbsolutePath(),
+                    archive.lastModified() + ":" + archive.length());
+        }
+    }
+
+    /**
+     * @return true if the sources and settings of this 
+     *         snapshot, taken of the current state of the 
+     *         project, are identical to the ones of the 
+     *         snapshot of the last build, and the archives
+     *         generated by that build still exist
+     */
+    boolean isUpToDate(IProject project, BuildSnapshot lastBuild) {
+        if (lastBuild==null || 
+                !select(false).equals(lastBuild.select(false))) {
+            return false;
+        }
+        if (!getCeylonModulesOutputDirectory(project).exists()) {
+            return false;
+        }
+        if (isExplodeModulesEnabled(project) &&
+                !getCeylonClassesOutputDirectory(project).exists()) {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the archives recorded by this 
+     *         snapshot are identical to the ones of the
+     *         snapshot of the last build
+     */
+    boolean hasSameArchives(BuildSnapshot lastBuild) {
+        return lastBuild!=null && 
+                select(true).equals(lastBuild.select(true));
+    }
+
+    private Map<Object, Object> select(boolean archives) {
+        Map<Object, Object> result = new HashMap<Object, Object>();
+        for (Map.Entry<Object, Object> entry: properties.entrySet()) {
+            if (entry.getKey().toString().startsWith(ARCHIVE_PREFIX)==archives) {
+                result.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Update this snapshot after an incremental build.
+     */
+    void update(Collection<IFile> changedFiles, Collection<IFile> removedFiles) {
+        for (IFile file: removedFiles) {
+            properties.remove(SOURCE_PREFIX + file.getFullPath());
+        }
+        for (IFile file: changedFiles) {
+            if (file.exists()) {
+                update(file);
+            }
+            else {
+                properties.remove(SOURCE_PREFIX + file.getFullPath());
+            }
+        }
+    }
+
+    private void update(IFile file) {
+        //the modification stamp of a resource is kept
+        //across sessions, and changes with its contents
+        properties.setProperty(SOURCE_PREFIX + file.getFullPath(),
+                file.getModificationStamp() + ":" + file.getLocalTimeStamp());
+    }
+
+    private static File getSnapshotFile(IProject project) {
+        return CeylonPlugin.getInstance().getStateLocation()
+                .append("snapshots").append(project.getName() + ".properties")
+                .toFile();
+    }
+
+}
@@ -0,0 +1,227 @@
+package com.redhat.ceylon.eclipse.core.builder;
+
+import static com.redhat.ceylon.compiler.java.util.Util.makeRepositoryManager;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.redhat.ceylon.cmr.api.ArtifactContext;
+import com.redhat.ceylon.cmr.api.ArtifactResult;
+import com.redhat.ceylon.cmr.api.Logger;
+import com.redhat.ceylon.cmr.api.RepositoryException;
+import com.redhat.ceylon.cmr.api.RepositoryManager;
+
+/**
+ * A repository manager which remembers where it found
+ * the artifacts it was asked for, so that the module
+ * archives of a project are not looked up in every
+ * repository again each time a model is built, or the
+ * classpath of a project is resolved.
+ *
+ * Managers are shared by every project with the same
+ * repositories. A remembered artifact is only used while
+ * its file keeps the size and modification time it had
+ * when it was found. Artifacts which were not found are
+ * not remembered, since they may be published later.
+ */
+public final class CachingRepositoryManager implements RepositoryManager {
+
+    private static final class CachedArtifact {
+        final File file;
+        final long lastModified;
+        final long length;
+        final ArtifactResult result;
+
+        CachedArtifact(File file, ArtifactResult result) {
+            this.file = file;
+            this.lastModified = file.lastModified();
+            this.length = file.length();
+            this.result = result;
+        }
+
+        boolean isValid() {
+            return file.lastModified()==lastModified &&
+                    file.length()==length;
+        }
+    }
+
+    private static final ConcurrentMap<String, CachingRepositoryManager> managers =
+            new ConcurrentHashMap<String, CachingRepositoryManager>();
+
+    private final RepositoryManager delegate;
+    private final String repositories;
+    private final ConcurrentMap<String, CachedArtifact> artifacts =
+            new ConcurrentHashMap<String, CachedArtifact>();
+    private final ConcurrentMap<String, CachedArtifact> artifactResults =
+            new ConcurrentHashMap<String, CachedArtifact>();
+
+    private CachingRepositoryManager(RepositoryManager delegate,
+            String repositories) {
+        this.delegate = delegate;
+        this.repositories = repositories;
+    }
+
+    /**
+     * @return the shared manager of the given repositories,
+     *         creating it if necessary
+     *
+     * @see com.redhat.ceylon.compiler.java.util.Util#makeRepositoryManager
+     */
+    public static RepositoryManager getRepositoryManager(List<String> userRepos,
+            String outRepo, Logger log) {
+        String repositories = userRepos + " -> " + outRepo;
+        CachingRepositoryManager manager = managers.get(repositories);
+        if (manager==null) {
+            manager = new CachingRepositoryManager(
+                    makeRepositoryManager(userRepos, outRepo, log),
+                    repositories);
+            CachingRepositoryManager existing =
+                    managers.putIfAbsent(repositories, manager);
+            if (existing!=null) {
+                manager = existing;
+            }
+        }
+        return manager;
+    }
+
+    /**
+     * @return the key of the given context, or null if
+     *         the artifact must always be looked up
+     */
+    private static String key(ArtifactContext ctx) {
+        if (ctx.isForceOperation() || ctx.getName()==null) {
+            return null;
+        }
+        return ctx.getName() + '/' + ctx.getVersion() + '/' +
+                ctx.getSuffix() + '/' + ctx.isLocalOnly() + '/' +
+                ctx.isIgnoreSHA() + '/' + ctx.isFetchSingleArtifact();
+    }
+
+    private void invalidate(ArtifactContext ctx) {
+        String key = key(ctx);
+        if (key!=null) {
+            artifacts.remove(key);
+            artifactResults.remove(key);
+        }
+    }
+
+    @Override
+    public File getArtifact(ArtifactContext ctx) throws RepositoryException {
+        String key = key(ctx);
+        if (key==null) {
+            return delegate.getArtifact(ctx);
+        }
+        CachedArtifact cached = artifacts.get(key);
+        if (cached!=null && cached.isValid()) {
+            return cached.file;
+        }
+        File file = delegate.getArtifact(ctx);
+        if (file!=null) {
+            artifacts.put(key, new CachedArtifact(file, null));
+        }
+        else {
+            artifacts.remove(key);
+        }
+        return file;
+    }
+
+    @Override
+    public ArtifactResult getArtifactResult(ArtifactContext ctx)
+            throws RepositoryException {
+        String key = key(ctx);
+        if (key==null) {
+            return delegate.getArtifactResult(ctx);
+        }
+        CachedArtifact cached = artifactResults.get(key);
+        if (cached!=null && cached.isValid()) {
+            return cached.result;
+        }
+        ArtifactResult result = delegate.getArtifactResult(ctx);
+        File file = result==null ? null : result.artifact();
+        if (file!=null) {
+            artifactResults.put(key, new CachedArtifact(file, result));
+        }
+        else {
+            artifactResults.remove(key);
+        }
+        return result;
+    }
+
+    @Override
+    public File getArtifact(String name, String version)
+            throws RepositoryException {
+        return delegate.getArtifact(name, version);
+    }
+
+    @Override
+    public ArtifactResult getArtifactResult(String name, String version)
+            throws RepositoryException {
+        return delegate.getArtifactResult(name, version);
+    }
+
+    @Override
+    public File[] resolve(String name, String version)
+            throws RepositoryException {
+        return delegate.resolve(name, version);
+    }
+
+    @Override
+    public File[] resolve(ArtifactContext ctx) throws RepositoryException {
+        return delegate.resolve(ctx);
+    }
+
+    @Override
+    public void putArtifact(String name, String version, InputStream content)
+            throws RepositoryException {
+        delegate.putArtifact(name, version, content);
+        invalidate(new ArtifactContext(name, version));
+    }
+
+    @Override
+    public void putArtifact(String name, String version, File content)
+            throws RepositoryException {
+        delegate.putArtifact(name, version, content);
+        invalidate(new ArtifactContext(name, version));
+    }
+
+    @Override
+    public void putArtifact(ArtifactContext ctx, InputStream content)
+            throws RepositoryException {
+        delegate.putArtifact(ctx, content);
+        invalidate(ctx);
+    }
+
+    @Override
+    public void putArtifact(ArtifactContext ctx, File content)
+            throws RepositoryException {
+        delegate.putArtifact(ctx, content);
+        invalidate(ctx);
+    }
+
+    @Override
+    public void removeArtifact(String name, String version)
+            throws RepositoryException {
+        delegate.removeArtifact(name, version);
+        invalidate(new ArtifactContext(name, version));
+    }
+
+    @Override
+    public void removeArtifact(ArtifactContext ctx) throws RepositoryException {
+        delegate.removeArtifact(ctx);
+        invalidate(ctx);
+    }
+
+    @Override
+    public List<String> getRepositoriesDisplayString() {
+        return delegate.getRepositoriesDisplayString();
+    }
+
+    @Override
+    public String toString() {
+        return "CachingRepositoryManager for " + repositories;
+    }
+
+}
@@ -3,11 +3,16 @@ package com.redhat.ceylon.eclipse.core.builder;
 import static com.redhat.ceylon.compiler.java.util.Util.getModuleArchiveName;
 import static com.redhat.ceylon.compiler.java.util.Util.getModulePath;
 import static com.redhat.ceylon.compiler.java.util.Util.getSourceArchiveName;
-import static com.redhat.ceylon.compiler.java.util.Util.makeRepositoryManager;
 import static com.redhat.ceylon.compiler.java.util.Util.quoteIfJavaKeyword;
 import static com.redhat.ceylon.compiler.typechecker.io.impl.Helper.computeRelativePath;
-import static com.redhat.ceylon.eclipse.code.resolve.CeylonReferenceResolver.getPhasedUnit;
+import static com.redhat.ceylon.eclipse.core.builder.CachingRepositoryManager.getRepositoryManager;
 import static com.redhat.ceylon.eclipse.core.builder.CeylonNature.NATURE_ID;
+import static com.redhat.ceylon.eclipse.core.builder.DeclarationIndex.getDeclarationIndex;
+import static com.redhat.ceylon.eclipse.core.builder.DeclarationIndex.removeDeclarationIndex;
+import static com.redhat.ceylon.eclipse.core.builder.PhasedUnitIndex.getPhasedUnitIndex;
+import static com.redhat.ceylon.eclipse.core.builder.PhasedUnitIndex.removePhasedUnitIndex;
+import static com.redhat.ceylon.eclipse.core.builder.TypeHierarchyIndex.getTypeHierarchyIndex;
+import static com.redhat.ceylon.eclipse.core.builder.TypeHierarchyIndex.removeTypeHierarchyIndex;
 import static com.redhat.ceylon.eclipse.core.classpath.CeylonClasspathUtil.getCeylonClasspathContainers;
 import static com.redhat.ceylon.eclipse.core.vfs.ResourceVirtualFile.createResourceVirtualFile;
 import static com.redhat.ceylon.eclipse.ui.CeylonPlugin.PLUGIN_ID;
@@ -26,11 +31,18 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.tools.Diagnostic;
 import javax.tools.DiagnosticListener;
@@ -55,6 +67,7 @@ import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IResourceDelta;
 import org.eclipse.core.resources.IResourceDeltaVisitor;
+import org.eclipse.core.resources.IWorkspace;
 import org.eclipse.core.resources.IncrementalProjectBuilder;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
@@ -102,8 +115,8 @@ import com.redhat.ceylon.compiler.typechecker.context.PhasedUnit;
 import com.redhat.ceylon.compiler.typechecker.context.PhasedUnits;
 import com.redhat.ceylon.compiler.typechecker.io.VirtualFile;
 import com.redhat.ceylon.compiler.typechecker.model.Declaration;
-import com.redhat.ceylon.compiler.typechecker.model.ExternalUnit;
 import com.redhat.ceylon.compiler.typechecker.model.Module;
+import com.redhat.ceylon.compiler.typechecker.model.ModuleImport;
 import com.redhat.ceylon.compiler.typechecker.model.Modules;
 import com.redhat.ceylon.compiler.typechecker.model.Package;
 import com.redhat.ceylon.compiler.typechecker.model.ProducedType;
@@ -116,8 +129,11 @@ import com.redhat.ceylon.compiler.typechecker.parser.ParseError;
 import com.redhat.ceylon.compiler.typechecker.tree.Tree;
 import com.redhat.ceylon.compiler.typechecker.tree.Tree.CompilationUnit;
 import com.redhat.ceylon.compiler.typechecker.util.ModuleManagerFactory;
+import com.redhat.ceylon.eclipse.core.builder.ParallelPhaseRunner.Phase;
+import com.redhat.ceylon.eclipse.core.builder.SourceScanner.ScannedSource;
 import com.redhat.ceylon.eclipse.core.classpath.CeylonClasspathContainer;
 import com.redhat.ceylon.eclipse.core.model.CeylonSourceFile;
+import com.redhat.ceylon.eclipse.core.model.loader.BinaryTypeCache;
 import com.redhat.ceylon.eclipse.core.model.loader.JDTClass;
 import com.redhat.ceylon.eclipse.core.model.loader.JDTModelLoader;
 import com.redhat.ceylon.eclipse.core.model.loader.JDTModelLoader.SourceFileObjectManager;
@@ -131,6 +147,7 @@ import com.redhat.ceylon.eclipse.util.EclipseLogger;
 import com.sun.source.util.TaskEvent;
 import com.sun.source.util.TaskListener;
 import com.sun.tools.javac.file.RelativePath.RelativeFile;
+import com.sun.tools.javac.file.ZipFileIndex;
 import com.sun.tools.javac.file.ZipFileIndexCache;
 import com.sun.tools.javac.util.Log;
 import com.sun.tools.javac.util.Names;
@@ -211,9 +228,12 @@ public class CeylonBuilder extends IncrementalProjectBuilder{
         Compiled
     };
     
-    private final static Map<IProject, ModelState> modelStates = new HashMap<IProject, ModelState>();
-    private final static Map<IProject, TypeChecker> typeCheckers = new HashMap<IProject, TypeChecker>();
-    private final static Map<IProject, List<IFile>> projectSources = new HashMap<IProject, List<IFile>>();
+    //the models of unrelated projects are set up concurrently
+    private final static Map<IProject, ModelState> modelStates = new ConcurrentHashMap<IProject, ModelState>();
+    private final static Map<IProject, TypeChecker> typeCheckers = new ConcurrentHashMap<IProject, TypeChecker>();
+    private final static Map<IProject, List<IFile>> projectSources = new ConcurrentHashMap<IProject, List<IFile>>();
+    private final static ConcurrentMap<IProject, DependencyGraph> dependencyGraphs = new ConcurrentHashMap<IProject, DependencyGraph>();
+    private final static Map<File, Long> zipFileTimestamps = new HashMap<File, Long>();
 
     public static final String CEYLON_CONSOLE= "Ceylon Build";
     private long startTime;
@@ -226,6 +246,18 @@ public class CeylonBuilder extends IncrementalProjectBuilder{
         return modelState;
     }
     
+    private static DependencyGraph getDependencyGraph(IProject project) {
+        DependencyGraph dependencyGraph = dependencyGraphs.get(project);
+        if (dependencyGraph==null) {
+            dependencyGraph = new DependencyGraph();
+            DependencyGraph existing = dependencyGraphs.putIfAbsent(project, dependencyGraph);
+            if (existing!=null) {
+                dependencyGraph = existing;
+            }
+        }
+        return dependencyGraph;
+    }
+    
     public static boolean isModelAvailable(IProject project) {
         ModelState modelState = getModelState(project);
         return modelState.ordinal() >= ModelState.TypeChecked.ordinal();
@@ -421,12 +453,29 @@ public class CeylonBuilder extends IncrementalProjectBuilder{
                     throw new OperationCanceledException();
                 }
                 
-                cleanupModules(monitor, project);
-                cleanupJdtClasses(monitor, project);
+                //if nothing changed since the last successful
+                //build, typically because the workspace is just
+                //being opened, the generated archives can be 
+                //reused, as long as the archives the project 
+                //depends on did not change either
+                monitor.subTask("Comparing with the last build of project " + project.getName());
+                BuildSnapshot lastBuild = kind==CLEAN_BUILD ? 
+                		null : BuildSnapshot.read(project);
+                BuildSnapshot snapshot = BuildSnapshot.create(project);
+                boolean upToDate = snapshot.isUpToDate(project, lastBuild);
+                BuildSnapshot.delete(project);
+                
+                if (!upToDate) {
+                    cleanupModules(monitor, project);
+                    cleanupJdtClasses(monitor, project);
+                }
                 
                 monitor.subTask("Clearing existing markers of project " + project.getName());
                 clearProjectMarkers(project);
-                clearMarkersOn(project);
+                //the typechecker markers are replaced once
+                //the project has been typechecked, and the
+                //backend markers when the archives are 
+                //generated again
                 monitor.worked(1);
                 
                 if (monitor.isCanceled()) {
@@ -454,31 +503,58 @@ public class CeylonBuilder extends IncrementalProjectBuilder{
                 modelStates.put(project, ModelState.TypeChecking);
                 builtPhasedUnits = fullTypeCheck(project, typeChecker, 
                 		monitor.newChild(35, PREPEND_MAIN_LABEL_TO_SUBTASK ));
+                for (PhasedUnit pu: builtPhasedUnits) {
+                    getDependencyGraph(project).updateShape(pu);
+                }
                 modelStates.put(project, ModelState.TypeChecked);
                 monitor.worked(1);
                 
+                //the archives the project depends on are only
+                //known once its modules have been resolved
+                snapshot.recordArchives(((JDTModuleManager) typeChecker.getPhasedUnits()
+                        .getModuleManager()).getClasspath());
+                if (upToDate && !snapshot.hasSameArchives(lastBuild)) {
+                    upToDate = false;
+                    cleanupModules(monitor, project);
+                    cleanupJdtClasses(monitor, project);
+                }
+                
                 //we do this before the binary generation, in order to 
                 //display the errors quicker, but if the backend starts
                 //adding its own errors, we should do it afterwards
                 monitor.subTask("Collecting problems for project " 
                         + project.getName());
-                addProblemAndTaskMarkers(typeChecker.getPhasedUnits().getPhasedUnits(), project);
+                addProblemAndTaskMarkers(typeChecker.getPhasedUnits().getPhasedUnits(), 
+                        project, true);
                 monitor.worked(1);
                 
                 if (monitor.isCanceled()) {
                     throw new OperationCanceledException();
                 }
 
-                monitor.subTask("Generating binaries for project " + project.getName());
-                final List<IFile> allSources = getProjectSources(project);
-//                getConsoleStream().println(timedMessage("Full generation of class files..."));
-//                getConsoleStream().println("             ...compiling " + 
-//                        allSources.size() + " source files...");
-                binariesGenerationOK = generateBinaries(project, javaProject, 
-                		allSources, typeChecker, 
-                		monitor.newChild(45, PREPEND_MAIN_LABEL_TO_SUBTASK));
-//                getConsoleStream().println(successMessage(binariesGenerationOK));
-                monitor.worked(1);
+                if (upToDate) {
+                    binariesGenerationOK = true;
+                    monitor.worked(46);
+                }
+                else {
+                    //when the archives are reused, so are the
+                    //backend markers of the build which made them
+                    clearBackendMarkersOn(project);
+                    monitor.subTask("Generating binaries for project " + project.getName());
+                    final List<IFile> allSources = getProjectSources(project);
+//                    getConsoleStream().println(timedMessage("Full generation of class files..."));
+//                    getConsoleStream().println("             ...compiling " + 
+//                            allSources.size() + " source files...");
+                    binariesGenerationOK = generateBinaries(project, javaProject, 
+                    		allSources, typeChecker, 
+                    		monitor.newChild(45, PREPEND_MAIN_LABEL_TO_SUBTASK));
+//                    getConsoleStream().println(successMessage(binariesGenerationOK));
+                    monitor.worked(1);
+                }
+                
+                if (binariesGenerationOK) {
+                    BuildSnapshot.write(project, snapshot);
+                }
                 
             }
             else
@@ -505,7 +581,7 @@ public class CeylonBuilder extends IncrementalProjectBuilder{
                 final Collection<IFile> sourceToCompile= new HashSet<IFile>();
                 
                 calculateDependencies(project, sourceToCompile, currentDelta, 
-                		changedSources, typeChecker, phasedUnits, monitor);
+                		changedSources, monitor);
                 monitor.worked(1);
                 
                 if (monitor.isCanceled()) {
@@ -531,14 +607,19 @@ public class CeylonBuilder extends IncrementalProjectBuilder{
                 if (builtPhasedUnits.isEmpty() && sourceToCompile.isEmpty()) {
                     return project.getReferencedProjects();
                 }
+                builtPhasedUnits = propagateShapeChanges(project, builtPhasedUnits, 
+                		sourceToCompile, monitor);
                 monitor.worked(1);
                 
+                BuildSnapshot snapshot = BuildSnapshot.read(project);
+                BuildSnapshot.delete(project);
+                
                 //we do this before the binary generation, in order to 
                 //display the errors quicker, but if the backend starts
                 //adding its own errors, we should do it afterwards
                 monitor.subTask("Collecting problems for project " 
                         + project.getName());
-                addProblemAndTaskMarkers(builtPhasedUnits, project);
+                addProblemAndTaskMarkers(builtPhasedUnits, project, false);
                 monitor.worked(1);
                 
                 if (monitor.isCanceled()) {
@@ -555,6 +636,11 @@ public class CeylonBuilder extends IncrementalProjectBuilder{
 //                getConsoleStream().println(successMessage(binariesGenerationOK));
                 monitor.worked(1);
                 
+                if (binariesGenerationOK && snapshot!=null) {
+                    snapshot.update(sourceToCompile, filesToRemove);
+                    BuildSnapshot.write(project, snapshot);
+                }
+                
                 if (monitor.isCanceled()) {
                     throw new OperationCanceledException();
                 }
@@ -663,17 +749,16 @@ public class CeylonBuilder extends IncrementalProjectBuilder{
 
 	private void collectDependencies(IProject project, TypeChecker typeChecker,
 			List<PhasedUnit> builtPhasedUnits) throws CoreException {
-		List<PhasedUnits> phasedUnitsForDependencies = new ArrayList<PhasedUnits>();
-		for (IProject referencingProject: project.getReferencedProjects()) {
-		    TypeChecker requiredProjectTypeChecker = getProjectTypeChecker(referencingProject);
-		    if (requiredProjectTypeChecker!=null) {
-		        phasedUnitsForDependencies.add(requiredProjectTypeChecker.getPhasedUnits());
-		    }
-		}
+		DependencyGraph dependencyGraph = getDependencyGraph(project);
 		for (PhasedUnit pu : builtPhasedUnits) {
-		    new UnitDependencyVisitor(pu, typeChecker.getPhasedUnits(), phasedUnitsForDependencies)
+		    new UnitDependencyVisitor(pu, dependencyGraph)
 		            .visit(pu.getCompilationUnit());
+		    dependencyGraph.checkProblems(project, pu);
+		    ReferenceIndex.update(pu.getCompilationUnit());
 		}
+		getDeclarationIndex(project).update(builtPhasedUnits);
+		getTypeHierarchyIndex(project).update(builtPhasedUnits);
+		getPhasedUnitIndex(project).update(builtPhasedUnits);
 	}
 
 	private void addBinaryGenerationProblemMarker(final IProject project)
@@ -689,7 +774,13 @@ public class CeylonBuilder extends IncrementalProjectBuilder{
 	private void cleanRemovedSources(List<IFile> filesToRemove,
 			PhasedUnits phasedUnits, IProject project) {
 		removeObsoleteClassFiles(filesToRemove, project);
+		DependencyGraph dependencyGraph = getDependencyGraph(project);
+		DeclarationIndex declarationIndex = getDeclarationIndex(project);
 		for (IFile fileToRemove: filesToRemove) {
+		    dependencyGraph.removeFile(fileToRemove);
+		    declarationIndex.removeFile(fileToRemove);
+		    getTypeHierarchyIndex(project).removeFile(fileToRemove);
+		    getPhasedUnitIndex(project).removeFile(fileToRemove);
 		    if(isCeylon(fileToRemove)) {
 		        // Remove the ceylon phasedUnit (which will also remove the unit from the package)
 		        PhasedUnit phasedUnitToDelete = phasedUnits.getPhasedUnit(createResourceVirtualFile(fileToRemove));
@@ -714,89 +805,40 @@ public class CeylonBuilder extends IncrementalProjectBuilder{
 
 	private void calculateDependencies(IProject project,
 			Collection<IFile> sourceToCompile, IResourceDelta currentDelta,
-			Set<IFile> fChangedSources, TypeChecker typeChecker, 
-			PhasedUnits phasedUnits, IProgressMonitor monitor) {
+			Set<IFile> fChangedSources, IProgressMonitor monitor) {
 		if (!fChangedSources.isEmpty()) {
 			
-		    Collection<IFile> changeDependents= new HashSet<IFile>();
-		    changeDependents.addAll(fChangedSources);
+		    DependencyGraph dependencyGraph = getDependencyGraph(project);
+		    //an edit to an already built Ceylon source file of 
+		    //this project is only propagated to its dependents
+		    //if it changes the shape of the unit, which we only
+		    //know once it has been typechecked again
+		    Collection<IFile> changedFiles = new ArrayList<IFile>();
+		    for (IFile f: fChangedSources) {
+		        if (f.getProject()==project && isCeylon(f) && 
+		        		f.exists() && dependencyGraph.hasShape(f)) {
+		            sourceToCompile.add(f);
+		        }
+		        else {
+		            changedFiles.add(f);
+		        }
+		    }
+		    Collection<IFile> changeDependents = 
+		    		dependencyGraph.getTransitiveDependents(changedFiles);
 		    /*if (emitDiags) {
 		        getConsoleStream().println("Changed files:");
 		        dumpSourceList(changeDependents);
 		    }*/
    
-		    boolean changed = false;
-		    do {
-		        Collection<IFile> additions= new HashSet<IFile>();
-		        for (Iterator<IFile> iter=changeDependents.iterator(); iter.hasNext();) {
-		            IFile srcFile= iter.next();
-		            IProject currentFileProject = srcFile.getProject();
-		            TypeChecker currentFileTypeChecker = null;
-		            if (currentFileProject == project) {
-		                currentFileTypeChecker = typeChecker;
-		            } 
-		            else {
-		                currentFileTypeChecker = getProjectTypeChecker(currentFileProject);
-		            }
-		            
-		            Set<String> filesDependingOn = getDependentsOf(srcFile,
-		                    currentFileTypeChecker, currentFileProject);
-   
-		            for (String dependingFile: filesDependingOn) {
-		            	
-		                if (monitor.isCanceled()) {
-		                    throw new OperationCanceledException();
-		                }
-		                
-		                //TODO: note that the following is slightly
-		                //      fragile - it depends on the format 
-		                //      of the path that we use to track
-		                //      dependents!
-		                IPath pathRelativeToProject = new Path(dependingFile);
-		                        //.makeRelativeTo(project.getLocation());
-						IFile depFile= (IFile) project.findMember(pathRelativeToProject);
-		                if (depFile == null) {
-		                    depFile= (IFile) currentFileProject.findMember(dependingFile);
-		                }
-		                if (depFile != null) {
-		                    additions.add(depFile);
-		                }
-		                else {
-		                    System.err.println("could not resolve dependent unit: " + 
-		                            dependingFile);
-		                }
-		            }
-		        }
-		        changed = changeDependents.addAll(additions);
-		    } while (changed);
-   
 		    if (monitor.isCanceled()) {
 		        throw new OperationCanceledException();
 		    }
 		    
-		    for (PhasedUnit phasedUnit : phasedUnits.getPhasedUnits()) {
-		        Unit unit = phasedUnit.getUnit();
-		        if (!unit.getUnresolvedReferences().isEmpty()) {
-		            IFile fileToAdd = ((IFileVirtualFile)(phasedUnit.getUnitFile())).getFile();
-		            if (fileToAdd.exists()) {
-		                sourceToCompile.add(fileToAdd);
-		            }
-		        }
-		        Set<Declaration> duplicateDeclarations = unit.getDuplicateDeclarations();
-		        if (!duplicateDeclarations.isEmpty()) {
-		            IFile fileToAdd = ((IFileVirtualFile)(phasedUnit.getUnitFile())).getFile();
-		            if (fileToAdd.exists()) {
-		                sourceToCompile.add(fileToAdd);
-		            }
-		            for (Declaration duplicateDeclaration : duplicateDeclarations) {
-		                PhasedUnit duplicateDeclPU = getPhasedUnit(project, duplicateDeclaration);
-		                if (duplicateDeclPU != null) {
-		                    IFile duplicateDeclFile = ((IFileVirtualFile)(duplicateDeclPU.getUnitFile())).getFile();
-		                    if (duplicateDeclFile.exists()) {
-		                        sourceToCompile.add(duplicateDeclFile);
-		                    }
-		                }
-		            }
+		    //units with unresolved references or duplicate 
+		    //declarations might be fixed by the change
+		    for (IFile fileToAdd: dependencyGraph.getFilesToRecheck()) {
+		        if (fileToAdd.exists()) {
+		            sourceToCompile.add(fileToAdd);
 		        }
 		    }
 		    
@@ -825,6 +867,49 @@ public class CeylonBuilder extends IncrementalProjectBuilder{
 		}
 	}
 
+	/**
+	 * Recheck the direct dependents of the freshly built
+	 * units whose shape changed, and so on until the shape
+	 * of no rechecked unit changes.
+	 * 
+	 * @return all the built units
+	 */
+	private List<PhasedUnit> propagateShapeChanges(IProject project, 
+			List<PhasedUnit> builtPhasedUnits, Collection<IFile> sourceToCompile, 
+			SubMonitor monitor) {
+		DependencyGraph dependencyGraph = getDependencyGraph(project);
+		List<PhasedUnit> allBuiltPhasedUnits = 
+				new ArrayList<PhasedUnit>(builtPhasedUnits);
+		List<PhasedUnit> lastBuiltPhasedUnits = builtPhasedUnits;
+		while (true) {
+		    if (monitor.isCanceled()) {
+		        throw new OperationCanceledException();
+		    }
+		    Set<IFile> changedShapes = new HashSet<IFile>();
+		    for (PhasedUnit pu: lastBuiltPhasedUnits) {
+		        if (dependencyGraph.updateShape(pu)) {
+		            changedShapes.add(getFile(pu));
+		        }
+		    }
+		    Set<IFile> dependents = new HashSet<IFile>();
+		    for (IFile f: dependencyGraph.getDirectDependents(changedShapes)) {
+		        if (f.getProject()==project && f.exists() && 
+		        		!sourceToCompile.contains(f)) {
+		            dependents.add(f);
+		        }
+		    }
+		    if (dependents.isEmpty()) {
+		        return allBuiltPhasedUnits;
+		    }
+		    monitor.subTask("Compiling " + dependents.size() + 
+		    		" dependent source files in project " + project.getName());
+		    sourceToCompile.addAll(dependents);
+		    lastBuiltPhasedUnits = incrementalBuild(project, dependents, 
+		    		monitor.newChild(0, PREPEND_MAIN_LABEL_TO_SUBTASK));
+		    allBuiltPhasedUnits.addAll(lastBuiltPhasedUnits);
+		}
+	}
+
 	private void calculateChangedSources(final IResourceDelta currentDelta, 
 			List<IResourceDelta> projectDeltas, final List<IFile> filesToRemove, 
 			final Set<IFile> changedSources, IProgressMonitor monitor) 
@@ -909,27 +994,6 @@ public class CeylonBuilder extends IncrementalProjectBuilder{
 //                "...binary generation succeeded" : "...binary generation FAILED");
 //    }
 
-    private Set<String> getDependentsOf(IFile srcFile,
-            TypeChecker currentFileTypeChecker,
-            IProject currentFileProject) {
-    	
-        if (srcFile.getRawLocation().getFileExtension().equals("ceylon")) {
-            PhasedUnit phasedUnit = currentFileTypeChecker.getPhasedUnits()
-            		.getPhasedUnit(ResourceVirtualFile.createResourceVirtualFile(srcFile));
-            if (phasedUnit != null && phasedUnit.getUnit() != null) {
-                return phasedUnit.getUnit().getDependentsOf();
-            }
-        } 
-        else {
-            Unit unit = getJavaUnit(currentFileProject, srcFile);
-            if (unit instanceof ExternalUnit) {
-                return unit.getDependentsOf();
-            }
-        }
-        
-        return Collections.emptySet();
-    }
-
     private void updateExternalPhasedUnitsInReferencingProjects(IProject project, 
     		List<PhasedUnit> builtPhasedUnits) {
         for (IProject referencingProject : project.getReferencingProjects()) {
@@ -967,13 +1031,30 @@ public class CeylonBuilder extends IncrementalProjectBuilder{
                 for (PhasedUnit pu : referencingPhasedUnits) {
                     pu.validateRefinement(); //TODO: only needed for type hierarchy view in IDE!
                 }
+                if (!referencingPhasedUnits.isEmpty()) {
+                    getDeclarationIndex(referencingProject).invalidateModules();
+                }
             }
         }
     }
 
-    static PhasedUnit parseFileToPhasedUnit(ModuleManager moduleManager, TypeChecker typeChecker,
-            ResourceVirtualFile file, ResourceVirtualFile srcDir,
-            Package pkg) {
+    /**
+     * The tokens and syntax tree of a source file. Lexing and
+     * parsing a file does not touch the model, so it may be
+     * done on any thread.
+     */
+    static final class ParsedFile {
+        final Tree.CompilationUnit compilationUnit;
+        final List<CommonToken> tokens;
+        
+        ParsedFile(Tree.CompilationUnit compilationUnit, 
+                List<CommonToken> tokens) {
+            this.compilationUnit = compilationUnit;
+            this.tokens = tokens;
+        }
+    }
+    
+    static ParsedFile parseFile(ResourceVirtualFile file) {
         ANTLRInputStream input;
         try {
             input = new ANTLRInputStream(file.getInputStream());
@@ -1008,11 +1089,26 @@ public class CeylonBuilder extends IncrementalProjectBuilder{
         }
         parserErrors.clear();
         
-        
-        PhasedUnit newPhasedUnit = new CeylonSourceFile(file, srcDir, cu, pkg, 
-                moduleManager, typeChecker, tokens);
-        
-        return newPhasedUnit;
+        return new ParsedFile(cu, tokens);
+    }
+    
+    /**
+     * Create the phased unit of a parsed source file, 
+     * adding its unit to the given package. This must
+     * be done on the thread building the model.
+     */
+    static PhasedUnit createPhasedUnit(ModuleManager moduleManager, TypeChecker typeChecker,
+            ResourceVirtualFile file, ResourceVirtualFile srcDir,
+            Package pkg, ParsedFile parsedFile) {
+        return new CeylonSourceFile(file, srcDir, parsedFile.compilationUnit, pkg, 
+                moduleManager, typeChecker, parsedFile.tokens);
+    }
+    
+    static PhasedUnit parseFileToPhasedUnit(ModuleManager moduleManager, TypeChecker typeChecker,
+            ResourceVirtualFile file, ResourceVirtualFile srcDir,
+            Package pkg) {
+        return createPhasedUnit(moduleManager, typeChecker, file, srcDir, pkg, 
+                parseFile(file));
     }
 
     private List<PhasedUnit> incrementalBuild(IProject project, Collection<IFile> sourceToCompile,
@@ -1029,7 +1125,6 @@ public class CeylonBuilder extends IncrementalProjectBuilder{
         Set<String> cleanedPackages = new HashSet<String>();
         
         List<PhasedUnit> phasedUnitsToUpdate = new ArrayList<PhasedUnit>();
-        List<Set<String>> dependentsOfList = new ArrayList<Set<String>>();
         
         for (IFile fileToUpdate : sourceToCompile) {
             if (monitor.isCanceled()) {
@@ -1060,13 +1155,9 @@ public class CeylonBuilder extends IncrementalProjectBuilder{
             PhasedUnit alreadyBuiltPhasedUnit = pus.getPhasedUnit(file);
 
             Package pkg = null;
-            Set<String> dependentsOf = Collections.emptySet();
             if (alreadyBuiltPhasedUnit!=null) {
                 // Editing an already built file
                 pkg = alreadyBuiltPhasedUnit.getPackage();
-                if (alreadyBuiltPhasedUnit.getUnit() != null) {
-                    dependentsOf = alreadyBuiltPhasedUnit.getUnit().getDependentsOf();
-                }
             }
             else {
                 IContainer packageFolder = file.getResource().getParent();
@@ -1076,7 +1167,6 @@ public class CeylonBuilder extends IncrementalProjectBuilder{
                 }
             }
             PhasedUnit newPhasedUnit = parseFileToPhasedUnit(moduleManager, typeChecker, file, srcDir, pkg);
-            dependentsOfList.add(dependentsOf);
             phasedUnitsToUpdate.add(newPhasedUnit);
             
         }
@@ -1088,7 +1178,7 @@ public class CeylonBuilder extends IncrementalProjectBuilder{
         }
         
         clearProjectMarkers(project);
-        clearMarkersOn(sourceToCompile);
+        clearBackendMarkersOn(sourceToCompile);
         
         for (PhasedUnit phasedUnit : phasedUnitsToUpdate) {
             if (pus.getPhasedUnitFromRelativePath(phasedUnit.getPathRelativeToSrcDir()) != null) {
@@ -1156,12 +1246,6 @@ public class CeylonBuilder extends IncrementalProjectBuilder{
             phasedUnit.analyseFlow();
         }
 
-        Iterator<Set<String>> itr = dependentsOfList.iterator();
-        for (PhasedUnit phasedUnit : phasedUnitsToUpdate) {
-            phasedUnit.getUnit().getDependentsOf().addAll(itr.next());
-            
-        }
-        
         if (monitor.isCanceled()) {
             throw new OperationCanceledException();
         }
@@ -1221,25 +1305,38 @@ public class CeylonBuilder extends IncrementalProjectBuilder{
             loader.addSourceArchivePhasedUnits(dependencyPhasedUnits.getPhasedUnits());
         }
         
-        for (PhasedUnit pu: dependencies) {
-        	monitor.subTask("- scanning declarations " + pu.getUnit().getFilename());
-            pu.scanDeclarations();
-            monitor.worked(1);
-        }
-        for (PhasedUnit pu: dependencies) {
-        	monitor.subTask("- scanning type declarations " + pu.getUnit().getFilename());
-            pu.scanTypeDeclarations();
-            monitor.worked(2);
-        }
+        //scanning type declarations stays on the calling 
+        //thread, since the model loader may trigger it on 
+        //demand for a unit other than the one being scanned
+        ParallelPhaseRunner runner = new ParallelPhaseRunner(
+                isParallelTypeCheckingEnabled(project), monitor);
+        ParallelPhaseRunner sequentialRunner = new ParallelPhaseRunner(
+                false, monitor);
+        
+        runner.run(dependencies, new Phase("- scanning declarations", 1) {
+            @Override
+            void run(PhasedUnit pu) {
+                pu.scanDeclarations();
+            }
+        });
+        sequentialRunner.run(dependencies, new Phase("- scanning type declarations", 2) {
+            @Override
+            void run(PhasedUnit pu) {
+                pu.scanTypeDeclarations();
+            }
+        });
         
         if (compileWithJDTModelLoader()) {
             loader.completeFromClasses();
             monitor.worked(2);
         }
         
-        for (PhasedUnit pu: dependencies) {
-            pu.validateRefinement(); //TODO: only needed for type hierarchy view in IDE!
-        }
+        runner.run(dependencies, new Phase("- validating refinement", 0) {
+            @Override
+            void run(PhasedUnit pu) {
+                pu.validateRefinement(); //TODO: only needed for type hierarchy view in IDE!
+            }
+        });
 
         loader.loadPackage("com.redhat.ceylon.compiler.java.metadata", true);
         loader.loadPackage("ceylon.language", true);
@@ -1250,52 +1347,57 @@ public class CeylonBuilder extends IncrementalProjectBuilder{
         monitor.subTask("(typechecking source files for project " 
                 + project.getName() +")");
 
-        for (PhasedUnit pu : listOfUnits) {
-            if (! pu.isDeclarationsScanned()) {
-            	monitor.subTask("- scanning declarations " + pu.getUnit().getFilename());
+        runner.run(listOfUnits, new Phase("- scanning declarations", 1) {
+            @Override
+            boolean isDone(PhasedUnit pu) {
+                return pu.isDeclarationsScanned();
+            }
+            @Override
+            void run(PhasedUnit pu) {
                 pu.validateTree();
                 pu.scanDeclarations();
-                monitor.worked(1);
             }
-        }
-        
-        if (monitor.isCanceled()) {
-            throw new OperationCanceledException();
-        }
-        for (PhasedUnit pu : listOfUnits) {
-            if (! pu.isTypeDeclarationsScanned()) {
-            	monitor.subTask("- scanning types " + pu.getUnit().getFilename());
+        });
+        sequentialRunner.run(listOfUnits, new Phase("- scanning types", 2) {
+            @Override
+            boolean isDone(PhasedUnit pu) {
+                return pu.isTypeDeclarationsScanned();
+            }
+            @Override
+            void run(PhasedUnit pu) {
                 pu.scanTypeDeclarations();
-                monitor.worked(2);
             }
-        }
-        if (monitor.isCanceled()) {
-            throw new OperationCanceledException();
-        }
-        for (PhasedUnit pu: listOfUnits) {
-            if (! pu.isRefinementValidated()) {
+        });
+        runner.run(listOfUnits, new Phase("- validating refinement", 0) {
+            @Override
+            boolean isDone(PhasedUnit pu) {
+                return pu.isRefinementValidated();
+            }
+            @Override
+            void run(PhasedUnit pu) {
                 pu.validateRefinement();
             }
-        }
-        if (monitor.isCanceled()) {
-            throw new OperationCanceledException();
-        }
-        for (PhasedUnit pu : listOfUnits) {
-            if (! pu.isFullyTyped()) {
-            	monitor.subTask("- typechecking " + pu.getUnit().getFilename());
+        });
+        final boolean showWarnings = showWarnings(project);
+        runner.run(listOfUnits, new Phase("- typechecking", 3) {
+            @Override
+            boolean isDone(PhasedUnit pu) {
+                return pu.isFullyTyped();
+            }
+            @Override
+            void run(PhasedUnit pu) {
                 pu.analyseTypes();
-                if (showWarnings(project)) {
-                	pu.analyseUsage();
+                if (showWarnings) {
+                    pu.analyseUsage();
                 }
-                monitor.worked(3);
             }
-        }
-        if (monitor.isCanceled()) {
-            throw new OperationCanceledException();
-        }
-        for (PhasedUnit pu: listOfUnits) {
-            pu.analyseFlow();
-        }
+        });
+        runner.run(listOfUnits, new Phase("- analysing flow", 0) {
+            @Override
+            void run(PhasedUnit pu) {
+                pu.analyseFlow();
+            }
+        });
 
         if (monitor.isCanceled()) {
             throw new OperationCanceledException();
@@ -1316,6 +1418,10 @@ public class CeylonBuilder extends IncrementalProjectBuilder{
     	modelStates.put(project, ModelState.Parsing);
     	typeCheckers.remove(project);
     	projectSources.remove(project);
+    	dependencyGraphs.remove(project);
+    	removeDeclarationIndex(project);
+    	removeTypeHierarchyIndex(project);
+    	removePhasedUnitIndex(project);
         
         SubMonitor monitor = SubMonitor.convert(mon,
         		"Setting up typechecker for project " + project.getName(), 5);
@@ -1335,7 +1441,7 @@ public class CeylonBuilder extends IncrementalProjectBuilder{
             });
 
         List<String> repos = getUserRepositories(project);
-        typeCheckerBuilder.setRepositoryManager(makeRepositoryManager(repos, 
+        typeCheckerBuilder.setRepositoryManager(getRepositoryManager(repos, 
         		getCeylonModulesOutputDirectory(project).getAbsolutePath(), 
         		new EclipseLogger()));
         TypeChecker typeChecker = typeCheckerBuilder.getTypeChecker();
@@ -1420,6 +1526,7 @@ public class CeylonBuilder extends IncrementalProjectBuilder{
 			final Module defaultModule, IProgressMonitor monitor) throws CoreException {
 		
 		final List<IFile> scannedSources = new ArrayList<IFile>();
+		final List<ScannedSource> ceylonSources = new ArrayList<ScannedSource>();
 		final Collection<IPath> sourceFolders = getSourceFolders(javaProject);
         for (final IPath srcAbsoluteFolderPath : sourceFolders) {
             final IPath srcFolderPath = srcAbsoluteFolderPath.makeRelativeTo(project.getFullPath());
@@ -1433,21 +1540,100 @@ public class CeylonBuilder extends IncrementalProjectBuilder{
                 throw new OperationCanceledException();
             }
             srcDirResource.accept(new SourceScanner(defaultModule, modelLoader, moduleManager,
-					srcDir, srcFolderPath, typeChecker, scannedSources,
-					phasedUnits));
+					srcDir, srcFolderPath, scannedSources, ceylonSources));
         }
+        parseSources(ceylonSources, typeChecker, phasedUnits, moduleManager, monitor);
         return scannedSources;
 	}
 
+	/**
+	 * Lex and parse the given source files concurrently, 
+	 * then add their phased units in the order the files 
+	 * were scanned.
+	 */
+	private static void parseSources(List<ScannedSource> sources, 
+			TypeChecker typeChecker, PhasedUnits phasedUnits, 
+			ModuleManager moduleManager, final IProgressMonitor monitor) {
+		List<Callable<ParsedFile>> tasks = new ArrayList<Callable<ParsedFile>>();
+		for (final ScannedSource source: sources) {
+			tasks.add(new Callable<ParsedFile>() {
+				@Override
+				public ParsedFile call() {
+					if (monitor.isCanceled()) {
+						return null;
+					}
+					try {
+						return parseFile(source.file);
+					}
+					catch (Exception e) {
+						e.printStackTrace();
+						return null;
+					}
+				}
+			});
+		}
+		
+		int threads = Math.min(tasks.size(), 
+				Runtime.getRuntime().availableProcessors());
+		List<Future<ParsedFile>> results;
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(threads, 1));
+		try {
+			results = executor.invokeAll(tasks);
+		}
+		catch (InterruptedException e) {
+			throw new OperationCanceledException();
+		}
+		finally {
+			executor.shutdown();
+		}
+		
+		if (monitor.isCanceled()) {
+			throw new OperationCanceledException();
+		}
+		
+		for (int i=0; i<sources.size(); i++) {
+			ScannedSource source = sources.get(i);
+			try {
+				ParsedFile parsedFile = results.get(i).get();
+				if (parsedFile!=null) {
+					PhasedUnit newPhasedUnit = createPhasedUnit(moduleManager, 
+							typeChecker, source.file, source.srcDir, source.pkg, 
+							parsedFile);
+					phasedUnits.addPhasedUnit(source.file, newPhasedUnit);
+				}
+			}
+			catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+    /**
+     * Replace the problem and task markers of the given
+     * units, in a single workspace operation.
+     * 
+     * @param fullBuild true if the units are all the units
+     *        of the project, so that the markers of any other
+     *        file of the project are obsolete
+     */
     private static void addProblemAndTaskMarkers(final List<PhasedUnit> units, 
-    		final IProject project) {
+    		final IProject project, final boolean fullBuild) {
     	new Job("updating markers for project: " + project) {
     		@Override
     		protected IStatus run(IProgressMonitor monitor) {
+    		    MarkerUpdate markerUpdate = new MarkerUpdate(fullBuild ? project : null);
     	        for (PhasedUnit phasedUnit: units) {
     	            IFile file = getFile(phasedUnit);
-    	            phasedUnit.getCompilationUnit().visit(new MarkerCreator(file));
-    	            addTaskMarkers(file, phasedUnit.getTokens());
+    	            markerUpdate.addFile(file);
+    	            phasedUnit.getCompilationUnit().visit(new MarkerCreator(file, markerUpdate));
+    	            addTaskMarkers(file, phasedUnit.getTokens(), markerUpdate);
+    	        }
+    	        try {
+    	            getWorkspace().run(markerUpdate, markerUpdate.getRule(), 
+    	                    IWorkspace.AVOID_UPDATE, monitor);
+    	        }
+    	        catch (CoreException e) {
+    	            e.printStackTrace();
     	        }
     			return Status.OK_STATUS;
     		}
@@ -1511,8 +1697,26 @@ public class CeylonBuilder extends IncrementalProjectBuilder{
                 sourceFiles.addAll(javaSourceFiles);
             } 
             if(!sourceFiles.isEmpty()){
-                success = compile(project, javaProject, options, sourceFiles, 
-                		typeChecker, printWriter, monitor);
+                SubMonitor subMonitor = SubMonitor.convert(monitor, 
+                        "Generating binaries for " + sourceFiles.size() + 
+                        " source files in project " + project.getName(), 
+                        sourceFiles.size());
+                long compilationStart = System.currentTimeMillis();
+                Map<File, Long> indexTimestamps = invalidateChangedZipFileIndexes();
+                List<List<List<File>>> batches = compileWithJDTModelLoader() ? 
+                        null : partitionByModule(filesToCompile, typeChecker);
+                if (batches==null) {
+                    success = compile(project, javaProject, 
+                            new ArrayList<String>(options), sourceFiles, 
+                            typeChecker, printWriter, subMonitor);
+                }
+                else {
+                    success = compileByModule(project, javaProject, options, 
+                            batches, typeChecker, printWriter, subMonitor);
+                }
+                recordZipFileIndexes(modulesOutputDir, indexTimestamps, 
+                        compilationStart);
+                subMonitor.done();
             }
             return success;
         }
@@ -1520,17 +1724,225 @@ public class CeylonBuilder extends IncrementalProjectBuilder{
             return true;
     }
 
+    /**
+     * Partition the Ceylon source files to compile by 
+     * module, in batches of modules which don't depend on
+     * each other, each batch depending only on the modules
+     * of the batches before it.
+     * 
+     * @return the batches, or null if the files should be
+     *         compiled together, because they all belong 
+     *         to the same module, or the module of some
+     *         file is not known
+     */
+    private static List<List<List<File>>> partitionByModule(
+            Collection<IFile> filesToCompile, TypeChecker typeChecker) {
+        Map<Module, List<File>> filesByModule = 
+                new LinkedHashMap<Module, List<File>>();
+        for (IFile file: filesToCompile) {
+            if (isCeylon(file)) {
+                PhasedUnit pu = typeChecker.getPhasedUnits()
+                        .getPhasedUnit(createResourceVirtualFile(file));
+                if (pu==null || pu.getPackage()==null ||
+                        pu.getPackage().getModule()==null) {
+                    return null;
+                }
+                Module module = pu.getPackage().getModule();
+                List<File> files = filesByModule.get(module);
+                if (files==null) {
+                    files = new ArrayList<File>();
+                    filesByModule.put(module, files);
+                }
+                files.add(file.getRawLocation().toFile());
+            }
+        }
+        if (filesByModule.size()<2) {
+            return null;
+        }
+        Map<Module, Integer> levels = new HashMap<Module, Integer>();
+        List<List<List<File>>> batches = new ArrayList<List<List<File>>>();
+        for (Map.Entry<Module, List<File>> e: filesByModule.entrySet()) {
+            int level = getCompilationLevel(e.getKey(), filesByModule.keySet(), 
+                    levels, new HashSet<Module>());
+            while (batches.size()<=level) {
+                batches.add(new ArrayList<List<File>>());
+            }
+            batches.get(level).add(e.getValue());
+        }
+        return batches;
+    }
+
+    /**
+     * @return the number of modules being compiled which
+     *         the given module depends on, directly or 
+     *         indirectly, along the longest chain of imports
+     */
+    private static int getCompilationLevel(Module module, 
+            Set<Module> compiledModules, Map<Module, Integer> levels, 
+            Set<Module> visiting) {
+        Integer level = levels.get(module);
+        if (level!=null) {
+            return level;
+        }
+        if (!visiting.add(module)) {
+            return 0; //circular imports
+        }
+        int result = 0;
+        for (ModuleImport mi: module.getImports()) {
+            Module imported = mi.getModule();
+            if (imported!=null) {
+                int importedLevel = getCompilationLevel(imported, 
+                        compiledModules, levels, visiting);
+                if (compiledModules.contains(imported)) {
+                    importedLevel++;
+                }
+                result = Math.max(result, importedLevel);
+            }
+        }
+        visiting.remove(module);
+        levels.put(module, result);
+        return result;
+    }
+
+    /**
+     * Compile each batch of modules in turn, running a 
+     * separate compiler task for each module of a batch,
+     * concurrently.
+     */
+    private boolean compileByModule(final IProject project, 
+            final IJavaProject javaProject, final List<String> options, 
+            List<List<List<File>>> batches, final TypeChecker typeChecker, 
+            final PrintWriter printWriter, final IProgressMonitor monitor) {
+        boolean success = true;
+        for (List<List<File>> batch: batches) {
+            if (monitor.isCanceled()) {
+                throw new OperationCanceledException();
+            }
+            List<Callable<Boolean>> tasks = new ArrayList<Callable<Boolean>>();
+            for (final List<File> sourceFiles: batch) {
+                tasks.add(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                        if (monitor.isCanceled()) {
+                            return false;
+                        }
+                        return compile(project, javaProject, 
+                                new ArrayList<String>(options), sourceFiles, 
+                                typeChecker, printWriter, monitor);
+                    }
+                });
+            }
+            int threads = Math.min(tasks.size(), 
+                    Runtime.getRuntime().availableProcessors());
+            List<Future<Boolean>> results;
+            ExecutorService executor = Executors.newFixedThreadPool(Math.max(threads, 1));
+            try {
+                results = executor.invokeAll(tasks);
+            }
+            catch (InterruptedException e) {
+                throw new OperationCanceledException();
+            }
+            finally {
+                executor.shutdown();
+            }
+            for (Future<Boolean> result: results) {
+                try {
+                    success = result.get() && success;
+                }
+                catch (Exception e) {
+                    e.printStackTrace();
+                    success = false;
+                }
+            }
+        }
+        return success;
+    }
+
+    /**
+     * Forget the cached indexes of the archives which 
+     * changed or disappeared since they were indexed. The 
+     * indexes of the other archives of the classpath are 
+     * kept, so that the compiler does not have to read 
+     * them again.
+     * 
+     * @return the timestamps of the archives whose indexes
+     *         were kept, as they are before the compilation
+     */
+    private static Map<File, Long> invalidateChangedZipFileIndexes() {
+        ZipFileIndexCache cache = ZipFileIndexCache.getSharedInstance();
+        Map<File, Long> indexTimestamps = new HashMap<File, Long>();
+        synchronized (zipFileTimestamps) {
+            for (ZipFileIndex index: new ArrayList<ZipFileIndex>(cache.getZipFileIndexes())) {
+                File zipFile = index.getZipFile();
+                Long timestamp = zipFileTimestamps.get(zipFile);
+                if (timestamp==null || !zipFile.exists() || 
+                        zipFile.lastModified()!=timestamp) {
+                    index.close();
+                    cache.removeFromCache(zipFile);
+                }
+                else {
+                    indexTimestamps.put(zipFile, timestamp);
+                }
+            }
+            zipFileTimestamps.clear();
+        }
+        return indexTimestamps;
+    }
+
+    /**
+     * Remember the timestamps of the archives indexed by
+     * the last compilation, as they were when they were
+     * indexed, so that an archive which changed during the
+     * compilation is indexed again by the next one. The 
+     * archives the compilation wrote, and the archives it 
+     * indexed which were modified since it started, may 
+     * have out of date indexes, which are dropped.
+     * 
+     * @param indexTimestamps the timestamps of the 
+     *        archives which were already indexed before 
+     *        the compilation
+     * @param compilationStart the time the compilation
+     *        started
+     */
+    private static void recordZipFileIndexes(File modulesOutputDir, 
+            Map<File, Long> indexTimestamps, long compilationStart) {
+        ZipFileIndexCache cache = ZipFileIndexCache.getSharedInstance();
+        String outputPath = modulesOutputDir==null ? 
+                null : modulesOutputDir.getAbsolutePath() + File.separator;
+        synchronized (zipFileTimestamps) {
+            for (ZipFileIndex index: new ArrayList<ZipFileIndex>(cache.getZipFileIndexes())) {
+                File zipFile = index.getZipFile();
+                Long timestamp = indexTimestamps.get(zipFile);
+                if (timestamp==null) {
+                    //indexed during the compilation: allow 
+                    //for the resolution of file timestamps
+                    long lastModified = zipFile.lastModified();
+                    if (lastModified<compilationStart-2000) {
+                        timestamp = lastModified;
+                    }
+                }
+                if (timestamp==null || outputPath!=null && 
+                        zipFile.getAbsolutePath().startsWith(outputPath)) {
+                    index.close();
+                    cache.removeFromCache(zipFile);
+                }
+                else {
+                    zipFileTimestamps.put(zipFile, timestamp);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param monitor a monitor sized for the source files,
+     *        which may be shared by concurrent compilations
+     */
     private boolean compile(final IProject project, IJavaProject javaProject, 
     		List<String> options, java.util.List<File> sourceFiles, 
     		final TypeChecker typeChecker, PrintWriter printWriter,
-    		IProgressMonitor mon) 
+    		final IProgressMonitor monitor) 
     				throws VerifyError {
     	
-    	final SubMonitor monitor = SubMonitor.convert(mon, 
-        		"Generating binaries for " + sourceFiles.size() + 
-        		" source files in project " + project.getName(), 
-        		sourceFiles.size());
-
         CeyloncTool compiler;
         try {
             compiler = new CeyloncTool();
@@ -1572,8 +1984,6 @@ public class CeylonBuilder extends IncrementalProjectBuilder{
             setupJDTModelLoader(project, typeChecker, context);
         }
         
-        ZipFileIndexCache.getSharedInstance().clearCache();
-        
         CeyloncTaskImpl task = (CeyloncTaskImpl) compiler.getTask(printWriter, 
                 fileManager, new CompileErrorReporter(), options, null, 
                 compilationUnits);
@@ -1582,11 +1992,15 @@ public class CeylonBuilder extends IncrementalProjectBuilder{
 			public void started(TaskEvent ta) {
 				String name = ta.getSourceFile().getName();
 				name = name.substring(name.lastIndexOf("/")+1);
-				monitor.subTask("- compiling " + name);
+				synchronized (monitor) {
+					monitor.subTask("- compiling " + name);
+				}
 			}
 			@Override
 			public void finished(TaskEvent ta) {
-				monitor.worked(1);
+				synchronized (monitor) {
+					monitor.worked(1);
+				}
 			}
 		});
         boolean success=false;
@@ -1596,7 +2010,6 @@ public class CeylonBuilder extends IncrementalProjectBuilder{
         catch (Exception e) {
             e.printStackTrace();
         }
-        monitor.done();
         return success;
     }
 
@@ -1802,6 +2215,10 @@ public class CeylonBuilder extends IncrementalProjectBuilder{
 		return getBuilderArgs(project).get("hideWarnings")==null;
 	}
 	
+	public static boolean isParallelTypeCheckingEnabled(IProject project) {
+		return getBuilderArgs(project).get("parallelTypeChecking")!=null;
+	}
+	
     public static String fileName(ClassMirror c) {
         if (c instanceof JavacClass) {
             return ((JavacClass) c).classSymbol.classfile.getName();
@@ -1908,9 +2325,18 @@ public class CeylonBuilder extends IncrementalProjectBuilder{
         }
     }
 
-    private static void clearMarkersOn(Collection<IFile> files) {
+    private static void clearBackendMarkersOn(IResource resource) {
+        try {
+            resource.deleteMarkers(PROBLEM_MARKER_ID + ".backend", true, DEPTH_INFINITE);
+        } 
+        catch (CoreException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void clearBackendMarkersOn(Collection<IFile> files) {
         for(IFile file: files) {
-            clearMarkersOn(file);
+            clearBackendMarkersOn(file);
         }
     }
 
@@ -1975,7 +2401,8 @@ public class CeylonBuilder extends IncrementalProjectBuilder{
 //        return myConsole;
 //    }
 
-    private static void addTaskMarkers(IFile file, List<CommonToken> tokens) {
+    private static void addTaskMarkers(IFile file, List<CommonToken> tokens, 
+            MarkerUpdate markerUpdate) {
         //clearTaskMarkersOn(file);
         for (CommonToken token: tokens) {
             if (token.getType()==CeylonLexer.LINE_COMMENT) {
@@ -1990,12 +2417,7 @@ public class CeylonBuilder extends IncrementalProjectBuilder{
                     attributes.put(IMarker.CHAR_END, token.getStopIndex());
                     attributes.put(IMarker.MESSAGE, token.getText().substring(2));   
                     attributes.put(IMarker.SOURCE_ID, SOURCE);
-                    try {
-                        file.createMarker(TASK_MARKER_ID).setAttributes(attributes);
-                    } 
-                    catch (Exception e) {
-                        e.printStackTrace();
-                    }
+                    markerUpdate.addMarker(file, TASK_MARKER_ID, attributes);
                 }
             }
         }
@@ -2012,6 +2434,7 @@ public class CeylonBuilder extends IncrementalProjectBuilder{
 //        getConsoleStream().println(timedMessage("Starting Ceylon clean on project: " + project.getName()));
 //        getConsoleStream().println("-----------------------------------");
         
+        BuildSnapshot.delete(project);
         cleanupModules(monitor, project);
         cleanupJdtClasses(monitor, project);
         
@@ -2122,6 +2545,11 @@ public class CeylonBuilder extends IncrementalProjectBuilder{
     public static void removeProject(IProject project) {
         typeCheckers.remove(project);
         projectSources.remove(project);
+        dependencyGraphs.remove(project);
+        removeDeclarationIndex(project);
+        removeTypeHierarchyIndex(project);
+        removePhasedUnitIndex(project);
+        BinaryTypeCache.removeProject(project);
         modelStates.remove(project);
     }
     
@@ -2388,7 +2816,7 @@ public class CeylonBuilder extends IncrementalProjectBuilder{
         }
     }
 
-    private static File getCeylonClassesOutputDirectory(IProject project) {
+    static File getCeylonClassesOutputDirectory(IProject project) {
         return getCeylonClassesOutputFolder(project)
         		.getRawLocation().toFile();
     }
@@ -26,6 +26,7 @@ public class CeylonNature extends ProjectNatureBase {
     List<String> repositoryPaths;
 	boolean enableJdtClasses;
 	boolean hideWarnings;
+	boolean parallelTypeChecking;
 	boolean keepSettings;
 	
     public CeylonNature() {
@@ -33,11 +34,13 @@ public class CeylonNature extends ProjectNatureBase {
     }
     
     public CeylonNature(IPath outputPath, List<String> repositoryPaths,
-    		boolean enableJdtClasses, boolean hideWarnings) {
+    		boolean enableJdtClasses, boolean hideWarnings, 
+    		boolean parallelTypeChecking) {
     	this.outputPath = outputPath;
     	this.repositoryPaths = repositoryPaths;
     	this.enableJdtClasses = enableJdtClasses;
     	this.hideWarnings = hideWarnings;
+    	this.parallelTypeChecking = parallelTypeChecking;
     }
     
     public String getNatureID() {
@@ -143,6 +146,12 @@ public class CeylonNature extends ProjectNatureBase {
     		else {
     			args.remove("explodeModules");
     		}
+    		if (parallelTypeChecking) {
+    			args.put("parallelTypeChecking", "true");
+    		}
+    		else {
+    			args.remove("parallelTypeChecking");
+    		}
     	}
 		return args;
     }
@@ -0,0 +1,307 @@
+package com.redhat.ceylon.eclipse.core.builder;
+
+import static com.redhat.ceylon.eclipse.core.builder.CeylonBuilder.getFile;
+import static com.redhat.ceylon.eclipse.core.builder.CeylonBuilder.getProjectTypeChecker;
+import static com.redhat.ceylon.eclipse.core.builder.CeylonBuilder.getProjects;
+import static com.redhat.ceylon.eclipse.core.builder.CeylonBuilder.isModelAvailable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+
+import com.redhat.ceylon.compiler.typechecker.TypeChecker;
+import com.redhat.ceylon.compiler.typechecker.context.PhasedUnit;
+import com.redhat.ceylon.compiler.typechecker.model.Declaration;
+import com.redhat.ceylon.compiler.typechecker.model.Module;
+import com.redhat.ceylon.compiler.typechecker.model.Package;
+import com.redhat.ceylon.compiler.typechecker.model.Unit;
+
+/**
+ * An index of the toplevel declarations visible in a
+ * project, for the Open Declaration and Open Type dialogs.
+ *
+ * The declarations of the source files of the project are
+ * updated by the builder every time a file is rebuilt or
+ * removed. The declarations of the modules imported by the
+ * project are collected the first time they are needed,
+ * and kept until the project is fully rebuilt, or until
+ * the sources of a required project change.
+ *
+ * Entries are bucketed by the lowercase first character
+ * of their name, which is also the first character of any
+ * prefix or camel-case pattern matching them, so that a
+ * query only has to look at the entries that can possibly
+ * match.
+ */
+public final class DeclarationIndex {
+
+    /**
+     * A declaration, together with the project it was
+     * found in, and the path of its source file.
+     */
+    public static final class Entry {
+
+        private final Declaration declaration;
+        private final IProject project;
+        private final String path;
+        private final boolean java;
+
+        Entry(Declaration declaration, IProject project,
+                String path, boolean java) {
+            this.declaration = declaration;
+            this.project = project;
+            this.path = path;
+            this.java = java;
+        }
+
+        public Declaration getDeclaration() {
+            return declaration;
+        }
+
+        /**
+         * @return the project, or null for a declaration
+         *         of an unversioned module
+         */
+        public IProject getProject() {
+            return project;
+        }
+
+        /**
+         * @return the project-relative path of the source
+         *         file, or null for a declaration of an
+         *         imported module
+         */
+        public String getPath() {
+            return path;
+        }
+
+        public boolean isJava() {
+            return java;
+        }
+
+    }
+
+    private static final char ALL = 0;
+
+    private static final Map<IProject, DeclarationIndex> indexes =
+            new HashMap<IProject, DeclarationIndex>();
+
+    private final IProject project;
+    private final Map<IFile, List<Entry>> sourceEntriesByFile =
+            new HashMap<IFile, List<Entry>>();
+    private final Map<Character, Set<Entry>> sourceEntries =
+            new HashMap<Character, Set<Entry>>();
+    private Map<Character, List<Entry>> moduleEntries;
+    private int moduleEntriesVersion;
+
+    private DeclarationIndex(IProject project) {
+        this.project = project;
+    }
+
+    static synchronized DeclarationIndex getDeclarationIndex(IProject project) {
+        DeclarationIndex index = indexes.get(project);
+        if (index==null) {
+            index = new DeclarationIndex(project);
+            indexes.put(project, index);
+        }
+        return index;
+    }
+
+    static synchronized void removeDeclarationIndex(IProject project) {
+        indexes.remove(project);
+    }
+
+    private static char key(String name) {
+        return Character.toLowerCase(name.charAt(0));
+    }
+
+    /**
+     * @return the bucket of entries a name matching the
+     *         given pattern must belong to, or {@link #ALL}
+     *         if the pattern may match any name
+     */
+    private static char patternKey(String pattern) {
+        if (pattern==null || pattern.isEmpty()) {
+            return ALL;
+        }
+        char first = pattern.charAt(0);
+        if (first=='*' || first=='?' ||
+                !Character.isJavaIdentifierPart(first)) {
+            return ALL;
+        }
+        return Character.toLowerCase(first);
+    }
+
+    private static boolean isIndexable(Declaration dec) {
+        return dec.getName()!=null && !dec.getName().isEmpty() &&
+                !dec.isAnonymous();
+    }
+
+    /**
+     * Replace the entries of the source files of the
+     * given freshly typechecked units.
+     */
+    synchronized void update(Collection<PhasedUnit> phasedUnits) {
+        for (PhasedUnit pu: phasedUnits) {
+            IFile file = getFile(pu);
+            removeFile(file);
+            String path = pu.getUnitFile().getPath();
+            List<Entry> entries = new ArrayList<Entry>();
+            for (Declaration dec: pu.getDeclarations()) {
+                if (dec.isToplevel() && isIndexable(dec)) {
+                    Entry entry = new Entry(dec, project, path, false);
+                    entries.add(entry);
+                    char key = key(dec.getName());
+                    Set<Entry> bucket = sourceEntries.get(key);
+                    if (bucket==null) {
+                        bucket = new LinkedHashSet<Entry>();
+                        sourceEntries.put(key, bucket);
+                    }
+                    bucket.add(entry);
+                }
+            }
+            sourceEntriesByFile.put(file, entries);
+        }
+    }
+
+    /**
+     * Forget the entries of a removed source file.
+     */
+    synchronized void removeFile(IFile file) {
+        List<Entry> entries = sourceEntriesByFile.remove(file);
+        if (entries!=null) {
+            for (Entry entry: entries) {
+                Set<Entry> bucket = sourceEntries.get(key(entry.getDeclaration().getName()));
+                if (bucket!=null) {
+                    bucket.remove(entry);
+                }
+            }
+        }
+    }
+
+    /**
+     * Forget the entries of the imported modules, after
+     * the sources of a required project changed.
+     */
+    synchronized void invalidateModules() {
+        moduleEntries = null;
+        moduleEntriesVersion++;
+    }
+
+    private synchronized void collectSourceEntries(char key, List<Entry> result) {
+        if (key==ALL) {
+            for (Set<Entry> bucket: sourceEntries.values()) {
+                result.addAll(bucket);
+            }
+        }
+        else {
+            Set<Entry> bucket = sourceEntries.get(key);
+            if (bucket!=null) {
+                result.addAll(bucket);
+            }
+        }
+    }
+
+    private void collectModuleEntries(char key, boolean includeJava,
+            List<Entry> result) {
+        Map<Character, List<Entry>> entries;
+        int version;
+        synchronized (this) {
+            entries = moduleEntries;
+            version = moduleEntriesVersion;
+        }
+        if (entries==null) {
+            //walking the packages of the modules may load
+            //classes, so don't hold the lock while doing it
+            entries = computeModuleEntries();
+            synchronized (this) {
+                if (version==moduleEntriesVersion) {
+                    moduleEntries = entries;
+                }
+            }
+        }
+        Collection<List<Entry>> buckets = key==ALL ? entries.values() :
+            Collections.singletonList(entries.get(key));
+        for (List<Entry> bucket: buckets) {
+            if (bucket!=null) {
+                for (Entry entry: bucket) {
+                    if (includeJava || !entry.isJava()) {
+                        result.add(entry);
+                    }
+                }
+            }
+        }
+    }
+
+    private Map<Character, List<Entry>> computeModuleEntries() {
+        Map<Character, List<Entry>> entries = new HashMap<Character, List<Entry>>();
+        TypeChecker tc = getProjectTypeChecker(project);
+        if (tc==null) {
+            return entries;
+        }
+        //the source files of the project are indexed
+        //separately, and kept up to date by the builder
+        Set<Unit> sourceUnits = new HashSet<Unit>();
+        for (PhasedUnit pu: tc.getPhasedUnits().getPhasedUnits()) {
+            sourceUnits.add(pu.getUnit());
+        }
+        for (Module m: tc.getContext().getModules().getListOfModules()) {
+            boolean isUnversionedModule = m.getVersion()==null;
+            for (Package p: m.getPackages()) {
+                for (Declaration dec: p.getMembers()) {
+                    if (isIndexable(dec) && !sourceUnits.contains(dec.getUnit())) {
+                        char key = key(dec.getName());
+                        List<Entry> bucket = entries.get(key);
+                        if (bucket==null) {
+                            bucket = new ArrayList<Entry>();
+                            entries.put(key, bucket);
+                        }
+                        bucket.add(new Entry(dec,
+                                isUnversionedModule ? null : project,
+                                null, m.isJava())); //TODO: figure out the full path
+                    }
+                }
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * @param pattern the pattern typed by the user, a
+     *        prefix, camel-case or wildcard pattern
+     * @param includeJava true if declarations of Java
+     *        modules should be included
+     *
+     * @return the entries of every project whose names
+     *         may match the given pattern, the declarations
+     *         of source files first, followed by those of
+     *         imported modules
+     */
+    public static List<Entry> getEntries(String pattern, boolean includeJava) {
+        char key = patternKey(pattern);
+        List<DeclarationIndex> projectIndexes = new ArrayList<DeclarationIndex>();
+        for (IProject project: getProjects()) {
+            if (isModelAvailable(project)) {
+                projectIndexes.add(getDeclarationIndex(project));
+            }
+        }
+        List<Entry> result = new ArrayList<Entry>();
+        for (DeclarationIndex index: projectIndexes) {
+            index.collectSourceEntries(key, result);
+        }
+        for (DeclarationIndex index: projectIndexes) {
+            index.collectModuleEntries(key, includeJava, result);
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,237 @@
+package com.redhat.ceylon.eclipse.core.builder;
+
+import static com.redhat.ceylon.eclipse.code.resolve.CeylonReferenceResolver.getPhasedUnit;
+import static com.redhat.ceylon.eclipse.core.builder.CeylonBuilder.getFile;
+import static com.redhat.ceylon.eclipse.core.builder.CeylonBuilder.getSourceFolders;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.IPath;
+
+import com.redhat.ceylon.compiler.typechecker.context.PhasedUnit;
+import com.redhat.ceylon.compiler.typechecker.model.Declaration;
+import com.redhat.ceylon.compiler.typechecker.model.Unit;
+import com.redhat.ceylon.eclipse.core.vfs.IFileVirtualFile;
+
+/**
+ * The reverse dependencies between the source files of a
+ * project and the units they depend on, in this project
+ * or in required projects.
+ *
+ * Units are identified by their path relative to their
+ * source folder, which is interned to an integer node,
+ * and the dependents of each node are kept in a bit set.
+ * The outgoing edges of a source file are replaced every
+ * time it is rebuilt, so the graph never accumulates
+ * dependencies that no longer exist.
+ *
+ * The graph also remembers which source files need to be
+ * rechecked by every incremental build, because they had
+ * unresolved references or duplicate declarations, and the
+ * {@link UnitShape} of every source file, so that changes
+ * which don't affect other units need not be propagated.
+ */
+final class DependencyGraph {
+
+    private final Map<String, Integer> nodes = new HashMap<String, Integer>();
+    private final List<IFile> files = new ArrayList<IFile>();
+    private final List<BitSet> dependents = new ArrayList<BitSet>();
+    private final List<BitSet> dependencies = new ArrayList<BitSet>();
+    private final Map<IFile, Set<IFile>> filesToRecheck =
+            new HashMap<IFile, Set<IFile>>();
+    private final Map<IFile, byte[]> shapes = new HashMap<IFile, byte[]>();
+
+    /**
+     * @return the path of the unit relative to its
+     *         source folder
+     */
+    static String getPath(Unit unit) {
+        return unit.getPackage().getQualifiedNameString().replace('.', '/') +
+                "/" + unit.getFilename();
+    }
+
+    /**
+     * @return the path of the source file relative to its
+     *         source folder, in the same format as
+     *         {@link #getPath(Unit)}, or null if it does not
+     *         belong to a source folder
+     */
+    static String getPath(IFile file) {
+        IPath path = file.getParent().getFullPath();
+        for (IPath sourceFolder: getSourceFolders(file.getProject())) {
+            if (sourceFolder.isPrefixOf(path)) {
+                return path.makeRelativeTo(sourceFolder).toString() +
+                        "/" + file.getName();
+            }
+        }
+        return null;
+    }
+
+    private int node(String path) {
+        Integer node = nodes.get(path);
+        if (node==null) {
+            node = files.size();
+            nodes.put(path, node);
+            files.add(null);
+            dependents.add(new BitSet());
+            dependencies.add(new BitSet());
+        }
+        return node;
+    }
+
+    /**
+     * Forget the dependencies of a source file of the
+     * project, before recording its new ones.
+     */
+    synchronized void clearDependencies(IFile file, String path) {
+        int node = node(path);
+        files.set(node, file);
+        BitSet outgoing = dependencies.get(node);
+        for (int i=outgoing.nextSetBit(0); i>=0; i=outgoing.nextSetBit(i+1)) {
+            dependents.get(i).clear(node);
+        }
+        outgoing.clear();
+        filesToRecheck.remove(file);
+    }
+
+    /**
+     * Forget the dependencies of a removed source file.
+     * Its dependents are kept, in case it comes back.
+     */
+    synchronized void removeFile(IFile file) {
+        String path = getPath(file);
+        if (path!=null && nodes.containsKey(path)) {
+            clearDependencies(file, path);
+            files.set(nodes.get(path), null);
+        }
+        shapes.remove(file);
+    }
+
+    /**
+     * @return true if the shape of the given source file
+     *         was recorded by a previous build
+     */
+    synchronized boolean hasShape(IFile file) {
+        return shapes.containsKey(file);
+    }
+
+    /**
+     * Record the shape of a freshly typechecked unit.
+     * 
+     * @return true if the shape differs from the one
+     *         recorded previously, or if there was none
+     */
+    synchronized boolean updateShape(PhasedUnit phasedUnit) {
+        byte[] shape = UnitShape.compute(phasedUnit.getUnit());
+        byte[] previous = shapes.put(getFile(phasedUnit), shape);
+        return previous==null || !Arrays.equals(previous, shape);
+    }
+
+    synchronized void addDependency(String dependentPath, String dependedOnPath) {
+        int dependent = node(dependentPath);
+        int dependedOn = node(dependedOnPath);
+        if (dependent!=dependedOn) {
+            dependents.get(dependedOn).set(dependent);
+            dependencies.get(dependent).set(dependedOn);
+        }
+    }
+
+    /**
+     * Remember if a freshly typechecked unit must be
+     * rechecked by the next incremental build.
+     */
+    synchronized void checkProblems(IProject project, PhasedUnit phasedUnit) {
+        Unit unit = phasedUnit.getUnit();
+        IFile file = getFile(phasedUnit);
+        filesToRecheck.remove(file);
+        Set<Declaration> duplicateDeclarations = unit.getDuplicateDeclarations();
+        if (!unit.getUnresolvedReferences().isEmpty() ||
+                !duplicateDeclarations.isEmpty()) {
+            Set<IFile> recheck = new HashSet<IFile>();
+            recheck.add(file);
+            for (Declaration duplicateDeclaration: duplicateDeclarations) {
+                PhasedUnit duplicateDeclPU = getPhasedUnit(project, duplicateDeclaration);
+                if (duplicateDeclPU!=null &&
+                        duplicateDeclPU.getUnitFile() instanceof IFileVirtualFile) {
+                    recheck.add(getFile(duplicateDeclPU));
+                }
+            }
+            filesToRecheck.put(file, recheck);
+        }
+    }
+
+    /**
+     * @return the source files which had unresolved
+     *         references or duplicate declarations the
+     *         last time they were typechecked
+     */
+    synchronized Set<IFile> getFilesToRecheck() {
+        Set<IFile> result = new HashSet<IFile>();
+        for (Set<IFile> recheck: filesToRecheck.values()) {
+            result.addAll(recheck);
+        }
+        return result;
+    }
+
+    /**
+     * @return the given files, together with all the source
+     *         files of the project which depend on them,
+     *         directly or transitively
+     */
+    synchronized Set<IFile> getTransitiveDependents(Collection<IFile> changedFiles) {
+        Set<IFile> result = new LinkedHashSet<IFile>(changedFiles);
+        collectDependents(changedFiles, true, result);
+        return result;
+    }
+
+    /**
+     * @return the source files of the project which 
+     *         directly depend on the given files
+     */
+    synchronized Set<IFile> getDirectDependents(Collection<IFile> changedFiles) {
+        Set<IFile> result = new LinkedHashSet<IFile>();
+        collectDependents(changedFiles, false, result);
+        return result;
+    }
+
+    private void collectDependents(Collection<IFile> changedFiles, 
+            boolean transitive, Set<IFile> result) {
+        BitSet visited = new BitSet();
+        int[] queue = new int[files.size()];
+        int head = 0, tail = 0;
+        for (IFile file: changedFiles) {
+            String path = getPath(file);
+            Integer node = path==null ? null : nodes.get(path);
+            if (node!=null && !visited.get(node)) {
+                visited.set(node);
+                queue[tail++] = node;
+            }
+        }
+        int roots = tail;
+        while (head<tail && (transitive || head<roots)) {
+            BitSet next = dependents.get(queue[head++]);
+            for (int i=next.nextSetBit(0); i>=0; i=next.nextSetBit(i+1)) {
+                if (!visited.get(i)) {
+                    visited.set(i);
+                    queue[tail++] = i;
+                    IFile file = files.get(i);
+                    if (file!=null) {
+                        result.add(file);
+                    }
+                }
+            }
+        }
+    }
+
+}
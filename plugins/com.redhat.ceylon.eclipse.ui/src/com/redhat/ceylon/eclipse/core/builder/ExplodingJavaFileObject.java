@@ -1,7 +1,8 @@
 package com.redhat.ceylon.eclipse.core.builder;
 
-import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -29,41 +30,73 @@ final class ExplodingJavaFileObject implements
 		this.javaFileObject = javaFileObject;
 	}
 
+	/**
+	 * The class is buffered in memory as it is generated,
+	 * then written in one go to the module archive and to
+	 * the exploded class file when the stream is closed,
+	 * so that no file is held open while the compiler
+	 * writes it. The class file is left untouched if it
+	 * already has the same contents.
+	 */
 	@Override
 	public OutputStream openOutputStream()
 	        throws IOException {
-	    return new OutputStream() {
-	        final OutputStream jarStream = javaFileObject.openOutputStream();
-	    	final OutputStream classFileStream = new BufferedOutputStream(new FileOutputStream(classFile));
-	    	@Override
-	    	public void write(int b) throws IOException {
-	    		jarStream.write(b);
-	    		classFileStream.write(b);
-	    	}
-	    	@Override
-	    	public void write(byte[] b, int off, int len)
-	    			throws IOException {
-	    		jarStream.write(b, off, len);
-	    		classFileStream.write(b, off, len);
-	    	}
-	    	@Override
-	    	public void write(byte[] b) throws IOException {
-	    		jarStream.write(b);
-	    		classFileStream.write(b);
-	    	}
+	    return new ByteArrayOutputStream() {
+	        boolean closed = false;
 	    	@Override
 	    	public void close() throws IOException {
-	    		classFileStream.close();
-	    		jarStream.close();
-	    	}
-	    	@Override
-	    	public void flush() throws IOException {
-	    		classFileStream.flush();
-	    		jarStream.flush();
+	    		if (closed) {
+	    			return;
+	    		}
+	    		closed = true;
+	    		OutputStream jarStream = javaFileObject.openOutputStream();
+	    		try {
+	    			writeTo(jarStream);
+	    		}
+	    		finally {
+	    			jarStream.close();
+	    		}
+	    		if (!hasContents(classFile, buf, count)) {
+	    			OutputStream classFileStream = new FileOutputStream(classFile);
+	    			try {
+	    				classFileStream.write(buf, 0, count);
+	    			}
+	    			finally {
+	    				classFileStream.close();
+	    			}
+	    		}
 	    	}
 	    };
 	}
 
+	private static boolean hasContents(File file, byte[] bytes, int length) 
+			throws IOException {
+		if (!file.isFile() || file.length()!=length) {
+			return false;
+		}
+		byte[] existing = new byte[length];
+		InputStream stream = new FileInputStream(file);
+		try {
+			int read = 0;
+			while (read<length) {
+				int n = stream.read(existing, read, length-read);
+				if (n<0) {
+					return false;
+				}
+				read += n;
+			}
+		}
+		finally {
+			stream.close();
+		}
+		for (int i=0; i<length; i++) {
+			if (existing[i]!=bytes[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
 	@Override
 	public String toString() {
 		return fileName.getPath();
@@ -3,6 +3,9 @@ package com.redhat.ceylon.eclipse.core.builder;
 import static com.redhat.ceylon.eclipse.core.builder.CeylonBuilder.PROBLEM_MARKER_ID;
 import static org.eclipse.jdt.core.IJavaModelMarker.BUILDPATH_PROBLEM_MARKER;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IMarker;
 
@@ -17,50 +20,37 @@ import com.redhat.ceylon.eclipse.util.ErrorVisitor;
  * controller (IParseController).  The parse controller should
  * be parsing the file and generating the messages that are
  * received by the MarkerCreator.  The MarkerCreator, in turn,
- * creates a problem marker for each error message received,
- * uses the parse controller to compute a line number for the
- * token provided with each message, and attaches the marker to
- * the given file at the computed line.
+ * adds a problem marker for each error message received to
+ * a {@link MarkerUpdate}, using the parse controller to 
+ * compute a line number for the token provided with each 
+ * message, at the computed line of the given file.
  */
 public class MarkerCreator extends ErrorVisitor {
 	
     protected IFile file;
+    private final MarkerUpdate markerUpdate;
 	public static final String ERROR_CODE_KEY= "errorCode";
 
-    public MarkerCreator(IFile file) {
+    MarkerCreator(IFile file, MarkerUpdate markerUpdate) {
         this.file = file;
+        this.markerUpdate = markerUpdate;
     }
 
     @Override
     public void handleMessage(int startOffset, int endOffset,
 			int startCol, int startLine, Message message) {
     	
-    	String[] attributeNames= new String[] {
-		        IMarker.LINE_NUMBER, 
-		        IMarker.CHAR_START, IMarker.CHAR_END, 
-		        IMarker.MESSAGE, 
-		        IMarker.PRIORITY, 
-		        IMarker.SEVERITY,
-		        ERROR_CODE_KEY,
-		        IMarker.SOURCE_ID
-			};
-		Object[] values= new Object[] {
-		        startLine, 
-		        startOffset, endOffset+1, 
-		        message.getMessage(), 
-		        IMarker.PRIORITY_HIGH, 
-		        getSeverity(message, warnForErrors),
-		        message.getCode(),
-		        CeylonBuilder.SOURCE
-			};
-		try {
-		    file.createMarker(isCompilerError(message.getMessage())?
-		    		BUILDPATH_PROBLEM_MARKER:PROBLEM_MARKER_ID)
-		        .setAttributes(attributeNames, values);
-		} 
-		catch (Exception e) {
-		    e.printStackTrace();
-		}
+    	Map<String, Object> attributes = new HashMap<String, Object>();
+    	attributes.put(IMarker.LINE_NUMBER, startLine);
+    	attributes.put(IMarker.CHAR_START, startOffset);
+    	attributes.put(IMarker.CHAR_END, endOffset+1);
+    	attributes.put(IMarker.MESSAGE, message.getMessage());
+    	attributes.put(IMarker.PRIORITY, IMarker.PRIORITY_HIGH);
+    	attributes.put(IMarker.SEVERITY, getSeverity(message, warnForErrors));
+    	attributes.put(ERROR_CODE_KEY, message.getCode());
+    	attributes.put(IMarker.SOURCE_ID, CeylonBuilder.SOURCE);
+    	markerUpdate.addMarker(file, isCompilerError(message.getMessage())?
+    			BUILDPATH_PROBLEM_MARKER:PROBLEM_MARKER_ID, attributes);
 	}
 
 	private static boolean isCompilerError(String msg) {
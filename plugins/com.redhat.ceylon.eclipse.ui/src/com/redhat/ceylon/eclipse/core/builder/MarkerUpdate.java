@@ -0,0 +1,176 @@
+package com.redhat.ceylon.eclipse.core.builder;
+
+import static com.redhat.ceylon.eclipse.core.builder.CeylonBuilder.PROBLEM_MARKER_ID;
+import static com.redhat.ceylon.eclipse.core.builder.CeylonBuilder.TASK_MARKER_ID;
+import static org.eclipse.core.resources.IResource.DEPTH_INFINITE;
+import static org.eclipse.core.resources.IResource.DEPTH_ZERO;
+import static org.eclipse.jdt.core.IJavaModelMarker.BUILDPATH_PROBLEM_MARKER;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceRuleFactory;
+import org.eclipse.core.resources.IWorkspaceRunnable;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.jobs.ISchedulingRule;
+import org.eclipse.core.runtime.jobs.MultiRule;
+
+/**
+ * The problem and task markers the builder wants on a set
+ * of source files. When run, it compares them with the
+ * markers the files already have, deleting only those
+ * which went away and creating only those which are new,
+ * all in one workspace operation, so that a build fires a
+ * single resource delta for all its markers.
+ *
+ * Markers of the compiler backend are not touched, since
+ * they are not produced by the typechecker.
+ */
+final class MarkerUpdate implements IWorkspaceRunnable {
+
+    private static final String[] MARKER_TYPES = {
+        PROBLEM_MARKER_ID, BUILDPATH_PROBLEM_MARKER, TASK_MARKER_ID
+    };
+
+    private static final class MarkerInfo {
+        final String type;
+        final Map<String, Object> attributes;
+
+        MarkerInfo(String type, Map<String, Object> attributes) {
+            this.type = type;
+            this.attributes = attributes;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj instanceof MarkerInfo) {
+                MarkerInfo that = (MarkerInfo) obj;
+                return type.equals(that.type) &&
+                        attributes.equals(that.attributes);
+            }
+            else {
+                return false;
+            }
+        }
+
+        @Override
+        public int hashCode() {
+            return 31*type.hashCode() + attributes.hashCode();
+        }
+    }
+
+    private final IResource scope;
+    private final Map<IFile, List<MarkerInfo>> markers =
+            new LinkedHashMap<IFile, List<MarkerInfo>>();
+
+    /**
+     * @param scope a resource whose other files should
+     *        lose their markers, or null if only the files
+     *        of this update should be touched
+     */
+    MarkerUpdate(IResource scope) {
+        this.scope = scope;
+    }
+
+    /**
+     * Replace all the markers of the given file, even if
+     * no marker is added to it.
+     */
+    void addFile(IFile file) {
+        if (!markers.containsKey(file)) {
+            markers.put(file, new ArrayList<MarkerInfo>());
+        }
+    }
+
+    void addMarker(IFile file, String type, Map<String, Object> attributes) {
+        addFile(file);
+        Map<String, Object> nonNullAttributes = new HashMap<String, Object>();
+        for (Map.Entry<String, Object> e: attributes.entrySet()) {
+            if (e.getValue()!=null) {
+                nonNullAttributes.put(e.getKey(), e.getValue());
+            }
+        }
+        markers.get(file).add(new MarkerInfo(type, nonNullAttributes));
+    }
+
+    /**
+     * @return a rule covering the markers of every file
+     *         of this update
+     */
+    ISchedulingRule getRule() {
+        ISchedulingRule rule = null;
+        if (scope!=null) {
+            IResourceRuleFactory ruleFactory = scope.getWorkspace().getRuleFactory();
+            rule = ruleFactory.markerRule(scope);
+        }
+        for (IFile file: markers.keySet()) {
+            IResourceRuleFactory ruleFactory = file.getWorkspace().getRuleFactory();
+            rule = MultiRule.combine(rule, ruleFactory.markerRule(file));
+        }
+        return rule;
+    }
+
+    @Override
+    public void run(IProgressMonitor monitor) throws CoreException {
+        if (scope!=null && scope.exists()) {
+            for (String type: MARKER_TYPES) {
+                for (IMarker marker: scope.findMarkers(type, false, DEPTH_INFINITE)) {
+                    IResource resource = marker.getResource();
+                    if (resource instanceof IFile && !markers.containsKey(resource)) {
+                        marker.delete();
+                    }
+                }
+            }
+        }
+        for (Map.Entry<IFile, List<MarkerInfo>> e: markers.entrySet()) {
+            if (monitor!=null && monitor.isCanceled()) {
+                return;
+            }
+            if (e.getKey().exists()) {
+                update(e.getKey(), e.getValue());
+            }
+        }
+    }
+
+    private static void update(IFile file, List<MarkerInfo> infos)
+            throws CoreException {
+        //the markers still to be created, with their multiplicity
+        Map<MarkerInfo, Integer> toCreate = new LinkedHashMap<MarkerInfo, Integer>();
+        for (MarkerInfo info: infos) {
+            Integer count = toCreate.get(info);
+            toCreate.put(info, count==null ? 1 : count+1);
+        }
+        for (String type: MARKER_TYPES) {
+            for (IMarker marker: file.findMarkers(type, false, DEPTH_ZERO)) {
+                @SuppressWarnings("unchecked")
+                Map<String, Object> attributes = marker.getAttributes();
+                MarkerInfo existing = new MarkerInfo(marker.getType(),
+                        attributes==null ? new HashMap<String, Object>() : attributes);
+                Integer count = toCreate.get(existing);
+                if (count==null) {
+                    marker.delete();
+                }
+                else if (count==1) {
+                    toCreate.remove(existing);
+                }
+                else {
+                    toCreate.put(existing, count-1);
+                }
+            }
+        }
+        for (Map.Entry<MarkerInfo, Integer> e: toCreate.entrySet()) {
+            MarkerInfo info = e.getKey();
+            for (int i=0; i<e.getValue(); i++) {
+                file.createMarker(info.type).setAttributes(info.attributes);
+            }
+        }
+    }
+
+}
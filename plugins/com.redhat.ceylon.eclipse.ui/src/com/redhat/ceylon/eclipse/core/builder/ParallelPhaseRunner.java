@@ -0,0 +1,122 @@
+package com.redhat.ceylon.eclipse.core.builder;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+
+import com.redhat.ceylon.compiler.typechecker.context.PhasedUnit;
+import com.redhat.ceylon.compiler.typechecker.model.Package;
+
+/**
+ * Runs one typechecking phase over a list of phased units,
+ * either on the calling thread or on a shared fork-join
+ * pool. A call to {@link #run} only returns once the phase
+ * has completed for every unit, so successive calls act as
+ * a barrier between phases.
+ *
+ * Units of the same package are always handled by the same
+ * task, one after the other, since they share the member
+ * and unit lists of their {@link Package}.
+ */
+final class ParallelPhaseRunner {
+
+    private static final ForkJoinPool pool = new ForkJoinPool();
+
+    static abstract class Phase {
+
+        private final String description;
+        private final int work;
+
+        Phase(String description, int work) {
+            this.description = description;
+            this.work = work;
+        }
+
+        /**
+         * @return true if the phase has already been
+         *         applied to the given unit
+         */
+        boolean isDone(PhasedUnit pu) {
+            return false;
+        }
+
+        abstract void run(PhasedUnit pu);
+
+    }
+
+    private final boolean parallel;
+    private final IProgressMonitor monitor;
+
+    ParallelPhaseRunner(boolean parallel, IProgressMonitor monitor) {
+        this.parallel = parallel;
+        this.monitor = monitor;
+    }
+
+    void run(List<PhasedUnit> units, final Phase phase) {
+        if (monitor.isCanceled()) {
+            throw new OperationCanceledException();
+        }
+        if (!parallel || units.size()<2) {
+            for (PhasedUnit pu: units) {
+                if (!phase.isDone(pu)) {
+                    monitor.subTask(phase.description + " " +
+                            pu.getUnit().getFilename());
+                    phase.run(pu);
+                }
+                monitor.worked(phase.work);
+            }
+            return;
+        }
+
+        monitor.subTask(phase.description + " " + units.size() +
+                " source files in parallel");
+        final List<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+        for (final List<PhasedUnit> group: groupByPackage(units)) {
+            tasks.add(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    for (PhasedUnit pu: group) {
+                        if (monitor.isCanceled()) {
+                            throw new OperationCanceledException();
+                        }
+                        if (!phase.isDone(pu)) {
+                            phase.run(pu);
+                        }
+                    }
+                }
+            });
+        }
+        //exceptions thrown by a task, including
+        //cancellation, are rethrown here
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(tasks);
+            }
+        });
+        //the progress monitor is not thread safe, so
+        //only report progress once the phase is over
+        monitor.worked(phase.work*units.size());
+    }
+
+    private static Iterable<List<PhasedUnit>> groupByPackage(List<PhasedUnit> units) {
+        Map<Package, List<PhasedUnit>> groups =
+                new LinkedHashMap<Package, List<PhasedUnit>>();
+        for (PhasedUnit pu: units) {
+            List<PhasedUnit> group = groups.get(pu.getPackage());
+            if (group==null) {
+                group = new ArrayList<PhasedUnit>();
+                groups.put(pu.getPackage(), group);
+            }
+            group.add(pu);
+        }
+        return groups.values();
+    }
+
+}
@@ -0,0 +1,174 @@
+package com.redhat.ceylon.eclipse.core.builder;
+
+import static com.redhat.ceylon.eclipse.core.builder.CeylonBuilder.getProjectTypeChecker;
+import static com.redhat.ceylon.eclipse.core.builder.CeylonBuilder.isModelAvailable;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+
+import com.redhat.ceylon.compiler.typechecker.TypeChecker;
+import com.redhat.ceylon.compiler.typechecker.context.PhasedUnit;
+import com.redhat.ceylon.compiler.typechecker.model.Declaration;
+import com.redhat.ceylon.compiler.typechecker.model.Unit;
+import com.redhat.ceylon.compiler.typechecker.tree.Tree;
+import com.redhat.ceylon.compiler.typechecker.tree.Visitor;
+
+/**
+ * The phased unit of every unit of the model of a project,
+ * and the node of every declaration of a phased unit, so
+ * that the quick fixes and the navigation don't have to
+ * walk the phased units of the project, and then the tree
+ * of the unit, to find where something is declared.
+ *
+ * The phased units are collected the first time they are
+ * needed. After that, the builder replaces the phased unit
+ * of every unit it rechecks. The declaration nodes of a
+ * phased unit are collected, in a single visit of its
+ * tree, the first time one of them is asked for.
+ */
+public final class PhasedUnitIndex {
+
+    private static final Map<IProject, PhasedUnitIndex> indexes =
+            new HashMap<IProject, PhasedUnitIndex>();
+
+    private static final class Entry {
+        final PhasedUnit phasedUnit;
+        Map<Declaration, Tree.Declaration> declarationNodes;
+
+        Entry(PhasedUnit phasedUnit) {
+            this.phasedUnit = phasedUnit;
+        }
+    }
+
+    private static final class DeclarationNodeVisitor extends Visitor {
+        final Map<Declaration, Tree.Declaration> declarationNodes =
+                new HashMap<Declaration, Tree.Declaration>();
+
+        //keep the first node, like FindDeclarationVisitor
+        private void add(Declaration dec, Tree.Declaration node) {
+            if (dec!=null && !declarationNodes.containsKey(dec)) {
+                declarationNodes.put(dec, node);
+            }
+        }
+
+        @Override
+        public void visit(Tree.Declaration that) {
+            add(that.getDeclarationModel(), that);
+            super.visit(that);
+        }
+
+        @Override
+        public void visit(Tree.ObjectDefinition that) {
+            add(that.getDeclarationModel().getTypeDeclaration(), that);
+            super.visit(that);
+        }
+    }
+
+    private final Map<String, Entry> entries = new HashMap<String, Entry>();
+    private boolean initialized;
+
+    private PhasedUnitIndex() {}
+
+    static synchronized PhasedUnitIndex getPhasedUnitIndex(IProject project) {
+        PhasedUnitIndex index = indexes.get(project);
+        if (index==null) {
+            index = new PhasedUnitIndex();
+            indexes.put(project, index);
+        }
+        return index;
+    }
+
+    static synchronized void removePhasedUnitIndex(IProject project) {
+        indexes.remove(project);
+    }
+
+    /**
+     * @return the phased unit of the given unit in the
+     *         given project, or null if the unit is not a
+     *         source file of the project, or the model of
+     *         the project is not available yet
+     */
+    public static PhasedUnit getPhasedUnit(IProject project, Unit unit) {
+        Entry entry = getEntry(project, unit);
+        return entry==null ? null : entry.phasedUnit;
+    }
+
+    /**
+     * @return the node of the given declaration in the
+     *         tree of the phased unit of its unit, or null
+     *         if it is not declared by a source file of the
+     *         given project
+     */
+    public static Tree.Declaration getDeclarationNode(IProject project,
+            Declaration dec) {
+        Entry entry = getEntry(project, dec.getUnit());
+        if (entry==null) {
+            return null;
+        }
+        synchronized (entry) {
+            if (entry.declarationNodes==null) {
+                DeclarationNodeVisitor visitor = new DeclarationNodeVisitor();
+                entry.phasedUnit.getCompilationUnit().visit(visitor);
+                entry.declarationNodes = visitor.declarationNodes;
+            }
+            return entry.declarationNodes.get(dec);
+        }
+    }
+
+    private static Entry getEntry(IProject project, Unit unit) {
+        if (unit==null || unit.getFilename()==null ||
+                !isModelAvailable(project)) {
+            return null;
+        }
+        TypeChecker typeChecker = getProjectTypeChecker(project);
+        if (typeChecker==null) {
+            return null;
+        }
+        return getPhasedUnitIndex(project).get(typeChecker,
+                DependencyGraph.getPath(unit));
+    }
+
+    private synchronized Entry get(TypeChecker typeChecker, String path) {
+        if (!initialized) {
+            for (PhasedUnit pu: typeChecker.getPhasedUnits().getPhasedUnits()) {
+                add(pu);
+            }
+            initialized = true;
+        }
+        return entries.get(path);
+    }
+
+    private void add(PhasedUnit pu) {
+        Unit unit = pu.getUnit();
+        if (unit!=null && unit.getFilename()!=null) {
+            entries.put(DependencyGraph.getPath(unit), new Entry(pu));
+        }
+    }
+
+    /**
+     * Replace the phased units of freshly typechecked
+     * units.
+     */
+    synchronized void update(Collection<PhasedUnit> phasedUnits) {
+        if (initialized) {
+            for (PhasedUnit pu: phasedUnits) {
+                add(pu);
+            }
+        }
+    }
+
+    /**
+     * Forget the phased unit of a removed source file.
+     */
+    synchronized void removeFile(IFile file) {
+        String path = DependencyGraph.getPath(file);
+        if (path!=null) {
+            entries.remove(path);
+        }
+    }
+
+}
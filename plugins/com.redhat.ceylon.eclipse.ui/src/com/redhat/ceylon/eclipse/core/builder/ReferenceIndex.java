@@ -0,0 +1,70 @@
+package com.redhat.ceylon.eclipse.core.builder;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import com.redhat.ceylon.compiler.typechecker.tree.Tree;
+import com.redhat.ceylon.compiler.typechecker.tree.Visitor;
+
+/**
+ * The identifiers occurring in each syntax tree, so that
+ * searches for the references to a declaration only have
+ * to visit the units which mention its name.
+ *
+ * The builder indexes the units of a project as they are
+ * typechecked. Other units, for example the units of
+ * source archives, or the tree of a dirty editor, are
+ * indexed the first time they are searched. Trees are
+ * held weakly, so the entries of replaced units go away
+ * with them.
+ */
+public final class ReferenceIndex {
+
+    private static final Map<Tree.CompilationUnit, Set<String>> identifiers =
+            Collections.synchronizedMap(new WeakHashMap<Tree.CompilationUnit, Set<String>>());
+
+    private ReferenceIndex() {}
+
+    private static Set<String> index(Tree.CompilationUnit cu) {
+        final Set<String> names = new HashSet<String>();
+        cu.visit(new Visitor() {
+            @Override
+            public void visit(Tree.Identifier that) {
+                names.add(that.getText());
+                super.visit(that);
+            }
+        });
+        identifiers.put(cu, names);
+        return names;
+    }
+
+    /**
+     * Index a freshly typechecked unit.
+     */
+    static void update(Tree.CompilationUnit cu) {
+        if (cu!=null) {
+            index(cu);
+        }
+    }
+
+    /**
+     * @return false if the given name does not occur
+     *         anywhere in the given tree, so that it
+     *         cannot contain references to a declaration
+     *         with that name
+     */
+    public static boolean mayReference(Tree.CompilationUnit cu, String name) {
+        if (name==null) {
+            return true;
+        }
+        Set<String> names = identifiers.get(cu);
+        if (names==null) {
+            names = index(cu);
+        }
+        return names.contains(name);
+    }
+
+}
@@ -13,40 +13,57 @@ import org.eclipse.core.resources.IResourceVisitor;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
 
-import com.redhat.ceylon.compiler.typechecker.TypeChecker;
 import com.redhat.ceylon.compiler.typechecker.analyzer.ModuleManager;
-import com.redhat.ceylon.compiler.typechecker.context.PhasedUnit;
-import com.redhat.ceylon.compiler.typechecker.context.PhasedUnits;
 import com.redhat.ceylon.compiler.typechecker.model.Module;
 import com.redhat.ceylon.compiler.typechecker.model.Package;
 import com.redhat.ceylon.eclipse.core.model.loader.JDTModelLoader;
 import com.redhat.ceylon.eclipse.core.model.loader.JDTModuleManager;
 import com.redhat.ceylon.eclipse.core.vfs.ResourceVirtualFile;
-import com.redhat.ceylon.eclipse.ui.CeylonPlugin;
 
+/**
+ * Walks a source folder, creating its modules and packages,
+ * and collects the Ceylon source files it contains, in
+ * resource order, so that they can be parsed afterwards.
+ */
 final class SourceScanner implements IResourceVisitor {
+	
+	/**
+	 * A Ceylon source file, along with the package, and so
+	 * the module, it belongs to.
+	 */
+	static final class ScannedSource {
+		final ResourceVirtualFile file;
+		final ResourceVirtualFile srcDir;
+		final Package pkg;
+		
+		ScannedSource(ResourceVirtualFile file, 
+				ResourceVirtualFile srcDir, Package pkg) {
+			this.file = file;
+			this.srcDir = srcDir;
+			this.pkg = pkg;
+		}
+	}
+	
 	private final Module defaultModule;
 	private final JDTModelLoader modelLoader;
 	private final JDTModuleManager moduleManager;
 	private final ResourceVirtualFile srcDir;
 	private final IPath srcFolderPath;
-	private final TypeChecker typeChecker;
 	private final List<IFile> scannedSources;
-	private final PhasedUnits phasedUnits;
+	private final List<ScannedSource> ceylonSources;
 	private Module module;
 
 	SourceScanner(Module defaultModule, JDTModelLoader modelLoader,
 			JDTModuleManager moduleManager, ResourceVirtualFile srcDir,
-			IPath srcFolderPath, TypeChecker typeChecker,
-			List<IFile> scannedSources, PhasedUnits phasedUnits) {
+			IPath srcFolderPath, List<IFile> scannedSources, 
+			List<ScannedSource> ceylonSources) {
 		this.defaultModule = defaultModule;
 		this.modelLoader = modelLoader;
 		this.moduleManager = moduleManager;
 		this.srcDir = srcDir;
 		this.srcFolderPath = srcFolderPath;
-		this.typeChecker = typeChecker;
 		this.scannedSources = scannedSources;
-		this.phasedUnits = phasedUnits;
+		this.ceylonSources = ceylonSources;
 	}
 
 	public boolean visit(IResource resource) throws CoreException {
@@ -107,15 +124,8 @@ final class SourceScanner implements IResourceVisitor {
 	                if (scannedSources != null) {
 	                    scannedSources.add(file);
 	                }
-	                ResourceVirtualFile virtualFile = createResourceVirtualFile(file);
-	                try {
-	                    PhasedUnit newPhasedUnit = CeylonBuilder.parseFileToPhasedUnit(moduleManager, 
-	                    		typeChecker, virtualFile, srcDir, pkg);
-	                    phasedUnits.addPhasedUnit(virtualFile, newPhasedUnit);
-	                } 
-	                catch (Exception e) {
-	                    e.printStackTrace();
-	                }
+	                ceylonSources.add(new ScannedSource(createResourceVirtualFile(file), 
+	                		srcDir, pkg));
 	            }
 	            if (CeylonBuilder.isJava((IFile)resource)) {
 	                if (scannedSources != null) {
@@ -0,0 +1,244 @@
+package com.redhat.ceylon.eclipse.core.builder;
+
+import static com.redhat.ceylon.eclipse.core.builder.CeylonBuilder.getProjectTypeChecker;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+
+import com.redhat.ceylon.compiler.typechecker.TypeChecker;
+import com.redhat.ceylon.compiler.typechecker.context.PhasedUnit;
+import com.redhat.ceylon.compiler.typechecker.model.ClassOrInterface;
+import com.redhat.ceylon.compiler.typechecker.model.Declaration;
+import com.redhat.ceylon.compiler.typechecker.model.Module;
+import com.redhat.ceylon.compiler.typechecker.model.Package;
+import com.redhat.ceylon.compiler.typechecker.model.TypeDeclaration;
+import com.redhat.ceylon.compiler.typechecker.model.Unit;
+
+/**
+ * The direct subtypes of every type of the model of a
+ * project, for the type hierarchy. The supertypes of a
+ * type are known by the model itself.
+ *
+ * The index is built the first time it is needed. After
+ * that, the builder replaces the types of every unit it
+ * rechecks, and the model loader hands over the types it
+ * loads lazily from binaries, which are added by the next
+ * query, so a query does not have to look at the 
+ * declarations of the whole model.
+ */
+public final class TypeHierarchyIndex {
+
+    private static final Map<IProject, TypeHierarchyIndex> indexes =
+            new HashMap<IProject, TypeHierarchyIndex>();
+
+    private final Map<TypeDeclaration, Set<ClassOrInterface>> subtypes =
+            new HashMap<TypeDeclaration, Set<ClassOrInterface>>();
+    private final Map<String, List<ClassOrInterface>> typesByUnit =
+            new HashMap<String, List<ClassOrInterface>>();
+    //the loader holds its own monitor when it loads types,
+    //so it must not wait for the monitor of the index
+    private final ConcurrentLinkedQueue<ClassOrInterface> loadedTypes =
+            new ConcurrentLinkedQueue<ClassOrInterface>();
+    private volatile boolean initialized;
+
+    private TypeHierarchyIndex() {}
+
+    static synchronized TypeHierarchyIndex getTypeHierarchyIndex(IProject project) {
+        TypeHierarchyIndex index = indexes.get(project);
+        if (index==null) {
+            index = new TypeHierarchyIndex();
+            indexes.put(project, index);
+        }
+        return index;
+    }
+
+    static synchronized void removeTypeHierarchyIndex(IProject project) {
+        indexes.remove(project);
+    }
+
+    /**
+     * Add a type loaded by the model loader of the given 
+     * project to its index, if the index was already built.
+     */
+    public static void addLoadedType(IProject project, ClassOrInterface type) {
+        TypeHierarchyIndex index;
+        synchronized (TypeHierarchyIndex.class) {
+            index = indexes.get(project);
+        }
+        if (index!=null && index.initialized) {
+            index.loadedTypes.add(type);
+        }
+    }
+
+    /**
+     * @param project the project, or null if the type
+     *        checker does not belong to a project
+     * @param typeChecker the model to search
+     *
+     * @return the given type together with all its direct
+     *         and indirect subtypes
+     */
+    public static Set<ClassOrInterface> getSubtypes(IProject project,
+            TypeChecker typeChecker, TypeDeclaration type) {
+        TypeHierarchyIndex index;
+        if (project==null || getProjectTypeChecker(project)!=typeChecker) {
+            index = new TypeHierarchyIndex();
+        }
+        else {
+            index = getTypeHierarchyIndex(project);
+        }
+        return index.getAllSubtypes(typeChecker, type);
+    }
+
+    private synchronized Set<ClassOrInterface> getAllSubtypes(TypeChecker typeChecker,
+            TypeDeclaration type) {
+        refresh(typeChecker);
+        Set<ClassOrInterface> result = new LinkedHashSet<ClassOrInterface>();
+        List<TypeDeclaration> queue = new ArrayList<TypeDeclaration>();
+        queue.add(type);
+        for (int i=0; i<queue.size(); i++) {
+            Set<ClassOrInterface> directSubtypes = subtypes.get(queue.get(i));
+            if (directSubtypes!=null) {
+                for (ClassOrInterface subtype: directSubtypes) {
+                    if (result.add(subtype)) {
+                        queue.add(subtype);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Scan the whole model the first time the index is 
+     * needed, and after that add the types loaded since
+     * the last query.
+     */
+    private void refresh(TypeChecker typeChecker) {
+        if (!initialized) {
+            //types loaded from now on are queued, and
+            //those loaded during the scan added twice
+            initialized = true;
+            for (Module m: typeChecker.getContext().getModules().getListOfModules()) {
+                for (Package p: new ArrayList<Package>(m.getPackages())) { //workaround CME
+                    for (Unit u: new ArrayList<Unit>(p.getUnits())) {
+                        try {
+                            addUnit(u);
+                        }
+                        catch (Exception e) {
+                            e.printStackTrace();
+                        }
+                    }
+                }
+            }
+        }
+        ClassOrInterface type;
+        while ((type = loadedTypes.poll())!=null) {
+            try {
+                addType(type);
+            }
+            catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void addUnit(Unit unit) {
+        //units without a file name never change
+        String path = unit.getFilename()==null ? 
+                null : DependencyGraph.getPath(unit);
+        if (path!=null) {
+            removeUnit(path);
+        }
+        List<ClassOrInterface> types = new ArrayList<ClassOrInterface>();
+        for (Declaration d: unit.getDeclarations()) {
+            if (d instanceof ClassOrInterface) {
+                ClassOrInterface td = (ClassOrInterface) d;
+                types.add(td);
+                addType(td);
+            }
+        }
+        if (path!=null) {
+            typesByUnit.put(path, types);
+        }
+    }
+
+    private void addType(ClassOrInterface td) {
+        TypeDeclaration etd = td.getExtendedTypeDeclaration();
+        if (etd!=null) {
+            addSubtype(etd, td);
+        }
+        for (TypeDeclaration std: td.getSatisfiedTypeDeclarations()) {
+            addSubtype(std, td);
+        }
+    }
+
+    private void addSubtype(TypeDeclaration supertype, ClassOrInterface subtype) {
+        Set<ClassOrInterface> set = subtypes.get(supertype);
+        if (set==null) {
+            set = new LinkedHashSet<ClassOrInterface>();
+            subtypes.put(supertype, set);
+        }
+        //replace any stale declaration of the same type
+        set.remove(subtype);
+        set.add(subtype);
+    }
+
+    private void removeUnit(String path) {
+        List<ClassOrInterface> types = typesByUnit.remove(path);
+        if (types!=null) {
+            for (ClassOrInterface td: types) {
+                TypeDeclaration etd = td.getExtendedTypeDeclaration();
+                if (etd!=null) {
+                    removeSubtype(etd, td);
+                }
+                for (TypeDeclaration std: td.getSatisfiedTypeDeclarations()) {
+                    removeSubtype(std, td);
+                }
+            }
+        }
+    }
+
+    private void removeSubtype(TypeDeclaration supertype, ClassOrInterface subtype) {
+        Set<ClassOrInterface> set = subtypes.get(supertype);
+        if (set!=null) {
+            set.remove(subtype);
+        }
+    }
+
+    /**
+     * Replace the types of freshly typechecked units.
+     */
+    synchronized void update(Collection<PhasedUnit> phasedUnits) {
+        if (initialized) {
+            for (PhasedUnit pu: phasedUnits) {
+                try {
+                    addUnit(pu.getUnit());
+                }
+                catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Forget the types of a removed source file.
+     */
+    synchronized void removeFile(IFile file) {
+        String path = DependencyGraph.getPath(file);
+        if (path!=null) {
+            removeUnit(path);
+        }
+    }
+
+}
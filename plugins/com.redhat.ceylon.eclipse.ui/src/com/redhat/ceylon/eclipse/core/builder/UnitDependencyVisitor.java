@@ -5,9 +5,7 @@ import java.util.List;
 import java.util.Set;
 
 import com.redhat.ceylon.compiler.typechecker.context.PhasedUnit;
-import com.redhat.ceylon.compiler.typechecker.context.PhasedUnits;
 import com.redhat.ceylon.compiler.typechecker.model.Declaration;
-import com.redhat.ceylon.compiler.typechecker.model.ExternalUnit;
 import com.redhat.ceylon.compiler.typechecker.model.IntersectionType;
 import com.redhat.ceylon.compiler.typechecker.model.ProducedType;
 import com.redhat.ceylon.compiler.typechecker.model.TypeDeclaration;
@@ -20,23 +18,19 @@ import com.redhat.ceylon.compiler.typechecker.tree.Visitor;
 public class UnitDependencyVisitor extends Visitor {
     
     private final PhasedUnit phasedUnit;
-    private final PhasedUnits phasedUnits;
-    private final List<PhasedUnits> phasedUnitsOfDependencies;
+    private final DependencyGraph dependencyGraph;
+    private final String currentUnitPath;
     private Set<Declaration> alreadyDone;
     
-    public UnitDependencyVisitor(PhasedUnit phasedUnit, PhasedUnits phasedUnits, 
-    		List<PhasedUnits> phasedUnitsOfDependencies) {
+    UnitDependencyVisitor(PhasedUnit phasedUnit, DependencyGraph dependencyGraph) {
         this.phasedUnit = phasedUnit;
-        this.phasedUnits = phasedUnits;
-        this.phasedUnitsOfDependencies = phasedUnitsOfDependencies;
+        this.dependencyGraph = dependencyGraph;
+        currentUnitPath = DependencyGraph.getPath(phasedUnit.getUnit());
+        dependencyGraph.clearDependencies(CeylonBuilder.getFile(phasedUnit), 
+                currentUnitPath);
         alreadyDone = new HashSet<Declaration>();
     }
     
-    private String getSrcFolderRelativePath(Unit u) {
-        return u.getPackage().getQualifiedNameString().replace('.', '/') + 
-                "/" + u.getFilename();
-    }
-
     private void storeDependency(Declaration d) {
         if (d!=null && (d instanceof UnionType || 
                         d instanceof IntersectionType || 
@@ -72,32 +66,14 @@ public class UnitDependencyVisitor extends Visitor {
             	if (!moduleName.equals("ceylon.language") && 
             			!moduleName.equals("java")) { //TODO: also filter out src archives from external repos
             		Unit currentUnit = phasedUnit.getUnit();
-            		String currentUnitPath = phasedUnit.getUnitFile().getPath();
             		String currentUnitName = currentUnit.getFilename();
             		String dependedOnUnitName = declarationUnit.getFilename();
             		String currentUnitPackage = currentUnit.getPackage().getNameAsString();
             		String dependedOnPackage = currentUnit.getPackage().getNameAsString();
             		if (!dependedOnUnitName.equals(currentUnitName) ||
             				!dependedOnPackage.equals(currentUnitPackage)) {
-            			if (declarationUnit instanceof ExternalUnit) {
-            				//TODO: this does not seem to work for cross-project deps
-            				declarationUnit.getDependentsOf().add(currentUnitPath);
-            			} 
-            			else {
-            				String dependedOnUnitRelPath = getSrcFolderRelativePath(declarationUnit);
-            				PhasedUnit dependedOnPhasedUnit = phasedUnits.getPhasedUnitFromRelativePath(dependedOnUnitRelPath);
-            				if (dependedOnPhasedUnit != null && dependedOnPhasedUnit.getUnit() != null) {
-            					dependedOnPhasedUnit.getUnit().getDependentsOf().add(currentUnitPath);
-            				} else {
-            					for (PhasedUnits phasedUnitsOfDependency : phasedUnitsOfDependencies) {
-            						dependedOnPhasedUnit = phasedUnitsOfDependency.getPhasedUnitFromRelativePath(dependedOnUnitRelPath);
-            						if (dependedOnPhasedUnit != null && dependedOnPhasedUnit.getUnit() != null) {
-            							dependedOnPhasedUnit.getUnit().getDependentsOf().add(currentUnitPath);
-            							break;
-            						}
-            					}
-            				}
-            			}
+            			dependencyGraph.addDependency(currentUnitPath, 
+            					DependencyGraph.getPath(declarationUnit));
             		}
             	}
             }
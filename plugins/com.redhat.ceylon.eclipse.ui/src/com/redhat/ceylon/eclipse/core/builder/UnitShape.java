@@ -0,0 +1,142 @@
+package com.redhat.ceylon.eclipse.core.builder;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+import com.redhat.ceylon.compiler.typechecker.model.Class;
+import com.redhat.ceylon.compiler.typechecker.model.Declaration;
+import com.redhat.ceylon.compiler.typechecker.model.Functional;
+import com.redhat.ceylon.compiler.typechecker.model.Generic;
+import com.redhat.ceylon.compiler.typechecker.model.Method;
+import com.redhat.ceylon.compiler.typechecker.model.MethodOrValue;
+import com.redhat.ceylon.compiler.typechecker.model.Parameter;
+import com.redhat.ceylon.compiler.typechecker.model.ParameterList;
+import com.redhat.ceylon.compiler.typechecker.model.ProducedType;
+import com.redhat.ceylon.compiler.typechecker.model.TypeDeclaration;
+import com.redhat.ceylon.compiler.typechecker.model.TypeParameter;
+import com.redhat.ceylon.compiler.typechecker.model.TypedDeclaration;
+import com.redhat.ceylon.compiler.typechecker.model.Unit;
+
+/**
+ * Computes a hash of everything other units can see of a
+ * unit: its toplevel declarations and their shared members,
+ * with their kinds, modifiers, types, type parameters and
+ * parameter lists, but not their bodies. When an edit does
+ * not change the hash of a unit, the units depending on it
+ * need not be rechecked.
+ */
+final class UnitShape {
+
+    private UnitShape() {}
+
+    static byte[] compute(Unit unit) {
+        StringBuilder shape = new StringBuilder();
+        for (Declaration d: unit.getDeclarations()) {
+            if (d.isToplevel() || d.isShared() && d.isMember()) {
+                appendDeclaration(shape, d);
+            }
+        }
+        try {
+            return MessageDigest.getInstance("SHA-1")
+                    .digest(shape.toString().getBytes("UTF-8"));
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void appendDeclaration(StringBuilder shape, Declaration d) {
+        shape.append(d.getClass().getSimpleName()).append(' ')
+            .append(d.getQualifiedNameString());
+        if (d.isShared()) shape.append(" shared");
+        if (d.isFormal()) shape.append(" formal");
+        if (d.isDefault()) shape.append(" default");
+        if (d.isActual()) shape.append(" actual");
+        if (d instanceof Class) {
+            Class c = (Class) d;
+            if (c.isAbstract()) shape.append(" abstract");
+            if (c.isAnonymous()) shape.append(" anonymous");
+        }
+        if (d instanceof Method) {
+            if (((Method) d).isDeclaredVoid()) shape.append(" void");
+        }
+        if (d instanceof MethodOrValue) {
+            if (((MethodOrValue) d).isShortcutRefinement()) shape.append(" refinement");
+        }
+        if (d instanceof TypedDeclaration) {
+            TypedDeclaration td = (TypedDeclaration) d;
+            if (td.isVariable()) shape.append(" variable");
+            if (td.hasUncheckedNullType()) shape.append(" unchecked");
+            shape.append(" : ");
+            appendType(shape, td.getType());
+        }
+        if (d instanceof Generic) {
+            appendTypeParameters(shape, ((Generic) d).getTypeParameters());
+        }
+        if (d instanceof TypeDeclaration) {
+            TypeDeclaration td = (TypeDeclaration) d;
+            shape.append(" extends ");
+            appendType(shape, td.getExtendedType());
+            shape.append(" satisfies");
+            appendTypes(shape, td.getSatisfiedTypes());
+            shape.append(" of");
+            appendTypes(shape, td.getCaseTypes());
+        }
+        if (d instanceof Functional) {
+            List<ParameterList> parameterLists = ((Functional) d).getParameterLists();
+            if (parameterLists!=null) {
+                for (ParameterList pl: parameterLists) {
+                    shape.append(" (");
+                    for (Parameter p: pl.getParameters()) {
+                        appendType(shape, p.getType());
+                        shape.append(' ').append(p.getName());
+                        if (p.isDefaulted()) shape.append('=');
+                        if (p.isSequenced()) shape.append("...");
+                        shape.append(',');
+                    }
+                    shape.append(')');
+                }
+            }
+        }
+        shape.append('\n');
+    }
+
+    private static void appendTypeParameters(StringBuilder shape,
+            List<TypeParameter> typeParameters) {
+        if (typeParameters!=null && !typeParameters.isEmpty()) {
+            shape.append(" <");
+            for (TypeParameter tp: typeParameters) {
+                if (tp.isCovariant()) shape.append("out ");
+                if (tp.isContravariant()) shape.append("in ");
+                shape.append(tp.getName());
+                if (tp.isSequenced()) shape.append("...");
+                if (tp.isSelfType()) shape.append(" self");
+                shape.append(" satisfies");
+                appendTypes(shape, tp.getSatisfiedTypes());
+                shape.append(" of");
+                appendTypes(shape, tp.getCaseTypes());
+                shape.append(',');
+            }
+            shape.append('>');
+        }
+    }
+
+    private static void appendTypes(StringBuilder shape, List<ProducedType> types) {
+        if (types!=null) {
+            for (ProducedType type: types) {
+                shape.append(' ');
+                appendType(shape, type);
+            }
+        }
+    }
+
+    private static void appendType(StringBuilder shape, ProducedType type) {
+        shape.append(type==null ? "?" : type.getProducedTypeQualifiedName());
+    }
+
+}
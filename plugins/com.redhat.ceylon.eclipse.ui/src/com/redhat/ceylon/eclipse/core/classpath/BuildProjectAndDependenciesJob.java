@@ -19,6 +19,9 @@ public class BuildProjectAndDependenciesJob extends Job {
 	public BuildProjectAndDependenciesJob(String name, IProject project) {
 		super(name);
 		this.project = project;
+		//building only needs the build rule, which may be 
+		//narrower than the whole workspace
+		setRule(project.getWorkspace().getRuleFactory().buildRule());
 	}
 
 	@Override
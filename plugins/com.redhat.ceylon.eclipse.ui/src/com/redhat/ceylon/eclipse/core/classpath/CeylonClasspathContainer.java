@@ -23,7 +23,6 @@ import static com.redhat.ceylon.eclipse.core.builder.CeylonBuilder.isExplodeModu
 import static com.redhat.ceylon.eclipse.core.builder.CeylonBuilder.parseCeylonModel;
 import static com.redhat.ceylon.eclipse.core.classpath.CeylonClasspathUtil.getCeylonClasspathEntry;
 import static com.redhat.ceylon.eclipse.ui.CeylonPlugin.PLUGIN_ID;
-import static org.eclipse.core.resources.ResourcesPlugin.getWorkspace;
 import static org.eclipse.core.runtime.SubProgressMonitor.PREPEND_MAIN_LABEL_TO_SUBTASK;
 import static org.eclipse.jdt.core.JavaCore.getClasspathContainer;
 import static org.eclipse.jdt.core.JavaCore.newLibraryEntry;
@@ -39,6 +38,7 @@ import java.util.Set;
 
 import org.eclipse.core.resources.IFolder;
 import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResourceRuleFactory;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
@@ -46,7 +46,9 @@ import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Path;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.SubProgressMonitor;
+import org.eclipse.core.runtime.jobs.ISchedulingRule;
 import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.core.runtime.jobs.MultiRule;
 import org.eclipse.jdt.core.ElementChangedEvent;
 import org.eclipse.jdt.core.IClasspathAttribute;
 import org.eclipse.jdt.core.IClasspathContainer;
@@ -176,7 +178,6 @@ public class CeylonClasspathContainer implements IClasspathContainer {
     						return !CeylonBuilder.isModelAvailable(p);
     					}
     				};
-    				job.setRule(p.getWorkspace().getRoot());
     				job.setPriority(Job.BUILD);
     				job.schedule(3000);
     				
@@ -194,7 +195,7 @@ public class CeylonClasspathContainer implements IClasspathContainer {
     	};
     	job.setUser(false);
     	job.setPriority(Job.BUILD);
-    	job.setRule(getWorkspace().getRoot());
+    	job.setRule(getProjectRule(project.getProject()));
     	job.schedule();
     }
 
@@ -225,7 +226,6 @@ public class CeylonClasspathContainer implements IClasspathContainer {
     	    		
     	            Job job = new BuildProjectAndDependenciesJob("Rebuild of project " + 
     	            		project.getName(), project);
-    	            job.setRule(project.getWorkspace().getRoot());
     	            job.schedule(3000);
     	            job.setPriority(Job.BUILD);
     				return Status.OK_STATUS;
@@ -240,10 +240,33 @@ public class CeylonClasspathContainer implements IClasspathContainer {
     	};
     	job.setUser(false);
     	job.setPriority(Job.BUILD);
-    	job.setRule(getWorkspace().getRoot());
+    	//setting the raw classpath needs more than the rules
+    	//of the projects, e.g. the external folders project
+    	job.setRule(javaProject.getProject().getWorkspace().getRoot());
         job.schedule();
     }
     
+    /**
+     * @return a rule allowing the modification of the given 
+     *         project and of the projects it references, 
+     *         whose models are read when resolving its 
+     *         dependencies, so that the dependencies of 
+     *         unrelated projects can be resolved concurrently
+     */
+    static ISchedulingRule getProjectRule(IProject project) {
+        IResourceRuleFactory ruleFactory = project.getWorkspace().getRuleFactory();
+        ISchedulingRule rule = ruleFactory.modifyRule(project);
+        try {
+            for (IProject p: project.getReferencedProjects()) {
+                rule = MultiRule.combine(rule, ruleFactory.modifyRule(p));
+            }
+        }
+        catch (CoreException e) {
+            e.printStackTrace();
+        }
+        return rule;
+    }
+    
 	private IClasspathEntry[] constructModifiedClasspath(IJavaProject javaProject) 
 			throws JavaModelException {
 		IClasspathEntry newEntry = JavaCore.newContainerEntry(path, null, 
@@ -1,8 +1,22 @@
 package com.redhat.ceylon.eclipse.core.model;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
+import org.antlr.runtime.ANTLRInputStream;
 import org.antlr.runtime.CommonToken;
+import org.antlr.runtime.CommonTokenStream;
 
 import com.redhat.ceylon.compiler.typechecker.TypeChecker;
 import com.redhat.ceylon.compiler.typechecker.analyzer.ModuleManager;
@@ -10,11 +24,39 @@ import com.redhat.ceylon.compiler.typechecker.context.PhasedUnit;
 import com.redhat.ceylon.compiler.typechecker.context.PhasedUnits;
 import com.redhat.ceylon.compiler.typechecker.io.VirtualFile;
 import com.redhat.ceylon.compiler.typechecker.model.Package;
+import com.redhat.ceylon.compiler.typechecker.parser.CeylonLexer;
 import com.redhat.ceylon.compiler.typechecker.tree.Tree.CompilationUnit;
 
 public class CeylonSourceFile extends PhasedUnit {
 
+    /**
+     * The number of token lists of units of source archives
+     * kept in memory, which may be set with the system 
+     * property ceylon.ide.tokenCacheSize.
+     */
+    private static final int TOKEN_CACHE_SIZE = 
+            Integer.getInteger("ceylon.ide.tokenCacheSize", 64);
+    
+    /**
+     * The most recently used token lists of units whose
+     * tokens are read again from their source when needed.
+     */
+    private static final Map<CeylonSourceFile, List<CommonToken>> recentTokens = 
+            new LinkedHashMap<CeylonSourceFile, List<CommonToken>>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+        @Override
+        protected boolean removeEldestEntry(
+                Map.Entry<CeylonSourceFile, List<CommonToken>> eldest) {
+            return size()>TOKEN_CACHE_SIZE;
+        }
+    };
+    
     private TypeChecker typeChecker;
+    /**
+     * The encoding of the source, if the tokens are not
+     * kept with the unit, or null if they are.
+     */
+    private String charset;
     private boolean validatingTree = false; 
     private boolean scanningDeclarations = false; 
     private boolean scanningTypeDeclarations = false; 
@@ -29,12 +71,97 @@ public class CeylonSourceFile extends PhasedUnit {
         this.typeChecker = typeChecker;
     }
     
+    /**
+     * Create a unit of a source archive or of a source 
+     * folder outside the workspace, which does not keep 
+     * its token list, since it is only needed by a few 
+     * operations, for example refactorings. The tokens
+     * are read again from the source when needed.
+     * 
+     * @param charset the encoding of the source
+     */
+    public CeylonSourceFile(VirtualFile unitFile, VirtualFile srcDir,
+            CompilationUnit cu, Package p, ModuleManager moduleManager,
+            TypeChecker typeChecker, String charset) {
+        super(unitFile, srcDir, cu, p, moduleManager, typeChecker.getContext());
+        this.typeChecker = typeChecker;
+        this.charset = charset;
+    }
+    
     public CeylonSourceFile(PhasedUnit other) {
         super(other);
         if (other instanceof CeylonSourceFile) {
             typeChecker = ((CeylonSourceFile) other).typeChecker;
+            charset = ((CeylonSourceFile) other).charset;
+        }
+    }
+    
+    @Override
+    public List<CommonToken> getTokens() {
+        if (charset==null) {
+            return super.getTokens();
+        }
+        synchronized (recentTokens) {
+            List<CommonToken> tokens = recentTokens.get(this);
+            if (tokens==null) {
+                tokens = lex();
+                recentTokens.put(this, tokens);
+            }
+            return tokens;
         }
     }
+    
+    private List<CommonToken> lex() {
+        try {
+            InputStream stream = openSource();
+            try {
+                CeylonLexer lexer = new CeylonLexer(new ANTLRInputStream(stream, charset));
+                CommonTokenStream tokenStream = new CommonTokenStream(lexer);
+                tokenStream.fill();
+                List<CommonToken> tokens = 
+                        new ArrayList<CommonToken>(tokenStream.getTokens().size());
+                tokens.addAll(tokenStream.getTokens());
+                return tokens;
+            }
+            finally {
+                stream.close();
+            }
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+            return Collections.emptyList();
+        }
+    }
+    
+    /**
+     * Open the source of this unit, reopening its source
+     * archive if necessary, since the archive is closed
+     * once its units have been parsed.
+     */
+    private InputStream openSource() throws IOException {
+        File srcDir = new File(getSrcDir().getPath());
+        String path = getPathRelativeToSrcDir();
+        if (srcDir.isDirectory()) {
+            return new FileInputStream(new File(srcDir, path));
+        }
+        final ZipFile zipFile = new ZipFile(srcDir);
+        ZipEntry entry = zipFile.getEntry(path);
+        if (entry==null) {
+            zipFile.close();
+            throw new FileNotFoundException(path + " in " + srcDir);
+        }
+        return new FilterInputStream(zipFile.getInputStream(entry)) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                }
+                finally {
+                    zipFile.close();
+                }
+            }
+        };
+    }
 
     @Override
     public void validateTree() {
@@ -0,0 +1,124 @@
+package com.redhat.ceylon.eclipse.core.model.loader;
+
+import java.io.File;
+import java.lang.ref.SoftReference;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.jdt.core.IPackageFragmentRoot;
+import org.eclipse.jdt.core.JavaModelException;
+import org.eclipse.jdt.internal.compiler.env.IBinaryType;
+import org.eclipse.jdt.internal.core.ClassFile;
+
+/**
+ * The class file structures read from module archives
+ * outside the workspace, shared by the model loaders of
+ * every project. The archives of versioned modules, and
+ * of the language module in particular, are the same for
+ * every project which imports them, so their classes are
+ * only read once, instead of once per project.
+ *
+ * The structures of an archive are dropped as soon as the
+ * archive changes size or modification time, or no open
+ * project uses it anymore. Only the most recently used
+ * archives are kept, and the structures themselves are 
+ * softly referenced, so that the cache never holds on to 
+ * memory the workspace needs.
+ */
+public final class BinaryTypeCache {
+
+    private static final int MAX_ARCHIVES = 200;
+
+    private static final class Archive {
+        final long lastModified;
+        final long length;
+        final Map<String, SoftReference<IBinaryType>> types =
+                new ConcurrentHashMap<String, SoftReference<IBinaryType>>();
+        final Set<IProject> projects = new HashSet<IProject>();
+
+        Archive(File file) {
+            lastModified = file.lastModified();
+            length = file.length();
+        }
+
+        boolean isValid(File file) {
+            return file.lastModified()==lastModified &&
+                    file.length()==length;
+        }
+    }
+
+    private static final Map<File, Archive> archives =
+            new LinkedHashMap<File, Archive>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<File, Archive> eldest) {
+                    return size()>MAX_ARCHIVES;
+                }
+            };
+
+    private BinaryTypeCache() {}
+
+    /**
+     * @return true if the classes of the given root can
+     *         be shared between projects
+     */
+    static boolean isShareable(IPackageFragmentRoot root) {
+        return root!=null && root.isArchive() && root.isExternal();
+    }
+
+    private static synchronized Archive getArchive(File file, 
+            IProject project) {
+        Archive archive = archives.get(file);
+        if (archive==null || !archive.isValid(file)) {
+            archive = new Archive(file);
+            archives.put(file, archive);
+        }
+        archive.projects.add(project);
+        return archive;
+    }
+
+    /**
+     * Drop the archives which are not used by any other
+     * project than the given project, after it was closed
+     * or removed.
+     */
+    public static synchronized void removeProject(IProject project) {
+        for (Iterator<Archive> iter = archives.values().iterator(); 
+                iter.hasNext();) {
+            Archive archive = iter.next();
+            archive.projects.remove(project);
+            if (archive.projects.isEmpty()) {
+                iter.remove();
+            }
+        }
+    }
+
+    /**
+     * @param root an archive for which
+     *        {@link #isShareable(IPackageFragmentRoot)}
+     *        is true
+     */
+    static IBinaryType getBinaryType(ClassFile classFile,
+            IPackageFragmentRoot root) throws JavaModelException {
+        File file = root.getPath().toFile();
+        String name = classFile.getParent().getElementName() + '/' +
+                classFile.getElementName();
+        Archive archive = getArchive(file, 
+                root.getJavaProject().getProject());
+        SoftReference<IBinaryType> ref = archive.types.get(name);
+        IBinaryType type = ref==null ? null : ref.get();
+        if (type==null) {
+            type = classFile.getBinaryTypeInfo(null, true);
+            if (type!=null) {
+                archive.types.put(name, new SoftReference<IBinaryType>(type));
+            }
+        }
+        return type;
+    }
+
+}
@@ -0,0 +1,166 @@
+package com.redhat.ceylon.eclipse.core.model.loader;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.redhat.ceylon.compiler.loader.mirror.ClassMirror;
+
+/**
+ * The class mirrors of a model loader, by qualified name.
+ * The model loader remembers the classes it did not find
+ * as null mirrors, which a {@link ConcurrentHashMap} can't
+ * hold, so they are stored as a marker. Lookups never
+ * block, and updates only block updates of other names
+ * hashed to the same segment, so that independent lookups
+ * can proceed in parallel.
+ *
+ * A lookup which started before the cache was cleared, or
+ * before some of its entries were removed, must not put 
+ * back what it found, since it may have read the classes 
+ * as they were before the change. So every clearing starts 
+ * a new generation, and a lookup only puts its result if 
+ * no new generation started since it began.
+ */
+final class ClassMirrorCache extends AbstractMap<String, ClassMirror> {
+
+    private static final Object NO_MIRROR = new Object();
+
+    private final ConcurrentHashMap<String, Object> mirrors =
+            new ConcurrentHashMap<String, Object>();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private int generation = 0;
+    
+    //the generation in which each lookup of this thread began
+    private final ThreadLocal<Map<String, Integer>> lookups = 
+            new ThreadLocal<Map<String, Integer>>() {
+                @Override
+                protected Map<String, Integer> initialValue() {
+                    return new HashMap<String, Integer>();
+                }
+            };
+
+    private static ClassMirror mirror(Object value) {
+        return value==NO_MIRROR ? null : (ClassMirror) value;
+    }
+
+    @Override
+    public ClassMirror get(Object name) {
+        return mirror(mirrors.get(name));
+    }
+
+    @Override
+    public boolean containsKey(Object name) {
+        return mirrors.containsKey(name);
+    }
+
+    /**
+     * Record the start of a lookup of the given name by
+     * the current thread, before the classes are searched.
+     */
+    void beginLookup(String name) {
+        lock.readLock().lock();
+        try {
+            lookups.get().put(name, generation);
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Drop the mirror found by a lookup which began before
+     * the last clearing of the cache.
+     */
+    @Override
+    public ClassMirror put(String name, ClassMirror mirror) {
+        lock.readLock().lock();
+        try {
+            Integer began = lookups.get().remove(name);
+            if (began!=null && began!=generation) {
+                return get(name);
+            }
+            return mirror(mirrors.put(name, mirror==null ? NO_MIRROR : mirror));
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public ClassMirror remove(Object name) {
+        return mirror(mirrors.remove(name));
+    }
+
+    @Override
+    public int size() {
+        return mirrors.size();
+    }
+
+    @Override
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            generation++;
+            mirrors.clear();
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove the given names, discarding the results of 
+     * the lookups in progress.
+     */
+    void removeAll(Collection<String> names) {
+        lock.writeLock().lock();
+        try {
+            generation++;
+            mirrors.keySet().removeAll(names);
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Set<Map.Entry<String, ClassMirror>> entrySet() {
+        return new AbstractSet<Map.Entry<String, ClassMirror>>() {
+            @Override
+            public Iterator<Map.Entry<String, ClassMirror>> iterator() {
+                final Iterator<Map.Entry<String, Object>> iterator =
+                        mirrors.entrySet().iterator();
+                return new Iterator<Map.Entry<String, ClassMirror>>() {
+                    @Override
+                    public boolean hasNext() {
+                        return iterator.hasNext();
+                    }
+                    @Override
+                    public Map.Entry<String, ClassMirror> next() {
+                        Map.Entry<String, Object> entry = iterator.next();
+                        return new SimpleImmutableEntry<String, ClassMirror>(
+                                entry.getKey(), mirror(entry.getValue()));
+                    }
+                    @Override
+                    public void remove() {
+                        iterator.remove();
+                    }
+                };
+            }
+            @Override
+            public int size() {
+                return mirrors.size();
+            }
+        };
+    }
+
+}
@@ -28,11 +28,13 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
-import java.util.TreeMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.jdt.core.IClassFile;
@@ -87,6 +89,7 @@ import com.redhat.ceylon.compiler.loader.model.LazyValue;
 import com.redhat.ceylon.compiler.typechecker.analyzer.ModuleManager;
 import com.redhat.ceylon.compiler.typechecker.context.PhasedUnit;
 import com.redhat.ceylon.compiler.typechecker.model.Class;
+import com.redhat.ceylon.compiler.typechecker.model.ClassOrInterface;
 import com.redhat.ceylon.compiler.typechecker.model.Declaration;
 import com.redhat.ceylon.compiler.typechecker.model.ExternalUnit;
 import com.redhat.ceylon.compiler.typechecker.model.Method;
@@ -101,6 +104,7 @@ import com.redhat.ceylon.compiler.typechecker.model.Unit;
 import com.redhat.ceylon.compiler.typechecker.tree.Tree;
 import com.redhat.ceylon.compiler.typechecker.tree.Visitor;
 import com.redhat.ceylon.eclipse.core.builder.CeylonBuilder;
+import com.redhat.ceylon.eclipse.core.builder.TypeHierarchyIndex;
 import com.redhat.ceylon.eclipse.core.model.CeylonDeclaration;
 
 /**
@@ -115,7 +119,8 @@ public class JDTModelLoader extends AbstractModelLoader {
 
     private ProblemReporter problemReporter;
     private LookupEnvironment lookupEnvironment;
-    private boolean mustResetLookupEnvironment = false;
+    private volatile boolean mustResetLookupEnvironment = false;
+    private final ClassMirrorCache mirrorCache = new ClassMirrorCache();
     
     private Map<String, Declaration> languageModuledeclarations;
     
@@ -131,6 +136,13 @@ public class JDTModelLoader extends AbstractModelLoader {
                 compilerOptions,
                 new DefaultProblemFactory());
         
+        //these caches are read outside of the loader monitor
+        //by lookupClassMirror(), which we can't override, so
+        //they have to be safe for concurrent typechecking,
+        //and class mirrors are looked up without the monitor
+        classMirrorCache = mirrorCache;
+        declarationsByName = Collections.synchronizedMap(new HashMap<String, Declaration>());
+        
         internalCreate();
     }
 
@@ -148,14 +160,18 @@ public class JDTModelLoader extends AbstractModelLoader {
              * Search for a declaration in the language module. 
              */
             public Declaration getLanguageModuleDeclaration(String name) {
-                if (languageModuledeclarations.containsKey(name)) {
-                    return languageModuledeclarations.get(name);
+                //lock on the loader, not on the unit, since the
+                //lookup itself goes through the loader
+                synchronized (JDTModelLoader.this) {
+                    if (languageModuledeclarations.containsKey(name)) {
+                        return languageModuledeclarations.get(name);
+                    }
+                    
+                    languageModuledeclarations.put(name, null);
+                    Declaration decl = super.getLanguageModuleDeclaration(name);
+                    languageModuledeclarations.put(name, decl);
+                    return decl;
                 }
-                
-                languageModuledeclarations.put(name, null);
-                Declaration decl = super.getLanguageModuleDeclaration(name);
-                languageModuledeclarations.put(name, decl);
-                return decl;
             }
         };
         this.typeParser = new TypeParser(this, typeFactory);
@@ -249,7 +265,7 @@ public class JDTModelLoader extends AbstractModelLoader {
     
     // TODO : remove when the bug in the AbstractModelLoader is corrected
     @Override
-    public LazyPackage findOrCreatePackage(Module module, String pkgName) {
+    public synchronized LazyPackage findOrCreatePackage(Module module, String pkgName) {
         LazyPackage pkg = super.findOrCreatePackage(module, pkgName);
         if ("".equals(pkgName)) {
             pkg.setName(Collections.<String>emptyList());
@@ -291,7 +307,7 @@ public class JDTModelLoader extends AbstractModelLoader {
     }
     
     @Override
-    public void loadPackage(String packageName, boolean loadDeclarations) {
+    public synchronized void loadPackage(String packageName, boolean loadDeclarations) {
         packageName = Util.quoteJavaKeywords(packageName);
         if(loadDeclarations && !loadedPackages.add(packageName)){
             return;
@@ -304,6 +320,7 @@ public class JDTModelLoader extends AbstractModelLoader {
             JDTModule jdtModule = (JDTModule) module;
             List<IPackageFragmentRoot> roots = jdtModule.getPackageFragmentRoots();
             IPackageFragment packageFragment = null;
+            Set<String> typeNames = new LinkedHashSet<String>();
             for (IPackageFragmentRoot root : roots) {
                 try {
                     IClasspathEntry entry = root.getRawClasspathEntry();
@@ -321,19 +338,7 @@ public class JDTModelLoader extends AbstractModelLoader {
                     packageFragment = root.getPackageFragment(packageName);
                     if(packageFragment.exists() && loadDeclarations) {
                         try {
-                            for (IClassFile classFile : packageFragment.getClassFiles()) {
-                                IType type = classFile.getType();
-                                if (type.exists() && ! type.isMember() && !sourceDeclarations.containsKey(getQualifiedName(type.getPackageFragment().getElementName(), type.getTypeQualifiedName()))) {
-                                    convertToDeclaration(type.getFullyQualifiedName(), DeclarationType.VALUE);
-                                }
-                            }
-                            for (org.eclipse.jdt.core.ICompilationUnit compilationUnit : packageFragment.getCompilationUnits()) {
-                                for (IType type : compilationUnit.getTypes()) {
-                                    if (type.exists() && ! type.isMember() && !sourceDeclarations.containsKey(getQualifiedName(type.getPackageFragment().getElementName(), type.getTypeQualifiedName()))) {
-                                        convertToDeclaration(type.getFullyQualifiedName(), DeclarationType.VALUE);
-                                    }
-                                }
-                            }
+                            addToplevelTypeNames(packageFragment, typeNames);
                         } catch (JavaModelException e) {
                             e.printStackTrace();
                         }
@@ -342,6 +347,47 @@ public class JDTModelLoader extends AbstractModelLoader {
                     e.printStackTrace();
                 }
             }
+            for (String typeName : typeNames) {
+                if (!sourceDeclarations.containsKey(getQualifiedName(packageName, typeName))) {
+                    convertToDeclaration(packageName.isEmpty() ? 
+                            typeName : packageName + "." + typeName, 
+                            DeclarationType.VALUE);
+                }
+            }
+        }
+    }
+
+    /**
+     * Collect the names of the toplevel types of a package
+     * fragment. The names of binary types are read from the
+     * names of their class files, so that the class files 
+     * themselves are only read when the types are converted,
+     * and converted only once if the package is split over 
+     * several roots.
+     */
+    private static void addToplevelTypeNames(IPackageFragment packageFragment,
+            Set<String> typeNames) throws JavaModelException {
+        for (IClassFile classFile : packageFragment.getClassFiles()) {
+            String fileName = classFile.getElementName();
+            String typeName = fileName.substring(0, fileName.length()-".class".length());
+            //only the class file of a type whose name contains 
+            //a $ can tell if it is a nested type
+            if (typeName.indexOf('$')<0) {
+                typeNames.add(typeName);
+            }
+            else {
+                IType type = classFile.getType();
+                if (type.exists() && ! type.isMember()) {
+                    typeNames.add(type.getTypeQualifiedName());
+                }
+            }
+        }
+        for (org.eclipse.jdt.core.ICompilationUnit compilationUnit : packageFragment.getCompilationUnits()) {
+            for (IType type : compilationUnit.getTypes()) {
+                if (type.exists() && ! type.isMember()) {
+                    typeNames.add(type.getTypeQualifiedName());
+                }
+            }
         }
     }
 
@@ -353,7 +399,42 @@ public class JDTModelLoader extends AbstractModelLoader {
         return modules.getDefaultModule();
     }
 
+    /**
+     * The module of each package looked up so far, or null 
+     * if no module contains it. The set of modules has no 
+     * stable order, so any change to the modules, or to the 
+     * packages of a module, invalidates every lookup.
+     */
+    private final Map<String, Module> modulesByPackage = new HashMap<String, Module>();
+    private int indexedModuleCount = 0;
+    
     public Module lookupModuleInternal(String packageName) {
+        synchronized (modulesByPackage) {
+            int moduleCount = modules.getListOfModules().size();
+            if (moduleCount!=indexedModuleCount) {
+                modulesByPackage.clear();
+                indexedModuleCount = moduleCount;
+            }
+            Module module = modulesByPackage.get(packageName);
+            if (module==null && !modulesByPackage.containsKey(packageName)) {
+                module = findModule(packageName);
+                modulesByPackage.put(packageName, module);
+            }
+            return module;
+        }
+    }
+    
+    /**
+     * Forget the modules of the packages looked up so far,
+     * after the packages of a module were loaded.
+     */
+    public void invalidateModuleLookups() {
+        synchronized (modulesByPackage) {
+            modulesByPackage.clear();
+        }
+    }
+    
+    private Module findModule(String packageName) {
         for(Module module : modules.getListOfModules()){
             if(module instanceof LazyModule){
                 if(((LazyModule)module).containsPackage(packageName))
@@ -369,7 +450,13 @@ public class JDTModelLoader extends AbstractModelLoader {
                 || pkgName.startsWith(moduleName+".");
     }
 
-    synchronized private LookupEnvironment getLookupEnvironment() {
+    /**
+     * The lookup environment is not thread safe, and the
+     * bindings of the mirrors are resolved in it while the 
+     * model is completed, so it is only used with the 
+     * loader monitor held.
+     */
+    private LookupEnvironment getLookupEnvironment() {
         if (mustResetLookupEnvironment) {
             lookupEnvironment.reset();
             mustResetLookupEnvironment = false;
@@ -378,22 +465,31 @@ public class JDTModelLoader extends AbstractModelLoader {
     }
     
     @Override
-    public synchronized ClassMirror lookupNewClassMirror(String name) {
-        if (sourceDeclarations.containsKey(name)) {
-            return new SourceClass(sourceDeclarations.get(name));
+    public ClassMirror lookupNewClassMirror(String name) {
+        //lookupClassMirror() puts the result in the cache
+        mirrorCache.beginLookup(name);
+        CeylonDeclaration sourceDeclaration = sourceDeclarations.get(name);
+        if (sourceDeclaration != null) {
+            return new SourceClass(sourceDeclaration);
         }
         
         return buildClassMirror(name);
     }
 
-    public synchronized ClassMirror buildClassMirror(String name) {
+    /**
+     * Searching the classpath for the type and reading its
+     * class file, which is what takes time, are done without 
+     * the loader monitor, so that independent lookups run in
+     * parallel. Only the bindings are created with the 
+     * monitor held.
+     */
+    public ClassMirror buildClassMirror(String name) {
         try {
             IType type = javaProject.findType(name);
             if (type == null) {
                 return null;
             }
             
-            LookupEnvironment theLookupEnvironment = getLookupEnvironment();
             if (type.isBinary()) {
                 ClassFile classFile = (ClassFile) type.getClassFile();
                 
@@ -406,36 +502,45 @@ public class JDTModelLoader extends AbstractModelLoader {
                     }
 
                     IFile classFileRsrc = (IFile) classFile.getCorrespondingResource();
-					IBinaryType binaryType = classFile.getBinaryTypeInfo(classFileRsrc, true);
+					IBinaryType binaryType = classFileRsrc==null && 
+							BinaryTypeCache.isShareable(fragmentRoot) ?
+							BinaryTypeCache.getBinaryType(classFile, fragmentRoot) :
+							classFile.getBinaryTypeInfo(classFileRsrc, true);
 					if (classFileRsrc!=null && !classFileRsrc.exists()) {
 						//the .class file has been deleted
 						return null;
 					}
-                    BinaryTypeBinding binaryTypeBinding = theLookupEnvironment.cacheBinaryType(binaryType, null);
-                    if (binaryTypeBinding == null) {
-                        char[][] compoundName = CharOperation.splitOn('/', binaryType.getName());
-                        ReferenceBinding existingType = theLookupEnvironment.getCachedType(compoundName);
-                        if (existingType == null || ! (existingType instanceof BinaryTypeBinding)) {
-                            return null;
+                    synchronized (this) {
+                        LookupEnvironment theLookupEnvironment = getLookupEnvironment();
+                        BinaryTypeBinding binaryTypeBinding = theLookupEnvironment.cacheBinaryType(binaryType, null);
+                        if (binaryTypeBinding == null) {
+                            char[][] compoundName = CharOperation.splitOn('/', binaryType.getName());
+                            ReferenceBinding existingType = theLookupEnvironment.getCachedType(compoundName);
+                            if (existingType == null || ! (existingType instanceof BinaryTypeBinding)) {
+                                return null;
+                            }
+                            binaryTypeBinding = (BinaryTypeBinding) existingType;
                         }
-                        binaryTypeBinding = (BinaryTypeBinding) existingType;
+                        return new JDTClass(binaryTypeBinding, theLookupEnvironment);
                     }
-                    return new JDTClass(binaryTypeBinding, theLookupEnvironment);
                 }
             } else {
                 char[][] compoundName = CharOperation.splitOn('.', type.getFullyQualifiedName().toCharArray());
-                ReferenceBinding referenceBinding = theLookupEnvironment.getType(compoundName);
-                if (referenceBinding != null) {
-                    if (referenceBinding instanceof ProblemReferenceBinding) {
-                        ProblemReferenceBinding problemReferenceBinding = (ProblemReferenceBinding) referenceBinding;
-                        if (problemReferenceBinding.problemId() == ProblemReasons.InternalNameProvided) {
-                            referenceBinding = problemReferenceBinding.closestReferenceMatch();
-                        } else {
-                            System.out.println(ProblemReferenceBinding.problemReasonString(problemReferenceBinding.problemId()));
-                            return null;
+                synchronized (this) {
+                    LookupEnvironment theLookupEnvironment = getLookupEnvironment();
+                    ReferenceBinding referenceBinding = theLookupEnvironment.getType(compoundName);
+                    if (referenceBinding != null) {
+                        if (referenceBinding instanceof ProblemReferenceBinding) {
+                            ProblemReferenceBinding problemReferenceBinding = (ProblemReferenceBinding) referenceBinding;
+                            if (problemReferenceBinding.problemId() == ProblemReasons.InternalNameProvided) {
+                                referenceBinding = problemReferenceBinding.closestReferenceMatch();
+                            } else {
+                                System.out.println(ProblemReferenceBinding.problemReasonString(problemReferenceBinding.problemId()));
+                                return null;
+                            }
                         }
+                        return new JDTClass(referenceBinding, theLookupEnvironment);
                     }
-                    return new JDTClass(referenceBinding, theLookupEnvironment);
                 }
             }
         } catch (JavaModelException e) {
@@ -445,19 +550,79 @@ public class JDTModelLoader extends AbstractModelLoader {
     }
 
     
+    @Override
+    public synchronized Package findPackage(String pkgName) {
+        return super.findPackage(pkgName);
+    }
+    
     @Override
     public Declaration convertToDeclaration(String typeName,
             DeclarationType declarationType) {
-        if (sourceDeclarations.containsKey(typeName)) {
-            return sourceDeclarations.get(typeName).getModelDeclaration();
+        CeylonDeclaration sourceDeclaration = sourceDeclarations.get(typeName);
+        if (sourceDeclaration != null) {
+            return sourceDeclaration.getModelDeclaration();
         }
-        try {
-            return super.convertToDeclaration(typeName, declarationType);
-        } catch(RuntimeException e) {
-            return null;
+        synchronized (this) {
+            try {
+                return super.convertToDeclaration(typeName, declarationType);
+            } catch(RuntimeException e) {
+                return null;
+            }
         }
     }
 
+    @Override
+    public synchronized Declaration getOrCreateDeclaration(ClassMirror classMirror,
+            DeclarationType declarationType, List<Declaration> decls, 
+            boolean[] alreadyExists) {
+        Declaration declaration = super.getOrCreateDeclaration(classMirror, 
+                declarationType, decls, alreadyExists);
+        //the types of source files are indexed by the builder
+        if (!alreadyExists[0] && !(classMirror instanceof SourceClass)) {
+            for (Declaration decl: decls) {
+                if (decl instanceof ClassOrInterface) {
+                    TypeHierarchyIndex.addLoadedType(javaProject.getProject(), 
+                            (ClassOrInterface) decl);
+                }
+            }
+        }
+        return declaration;
+    }
+    
+    // The lazy model is completed on demand from whichever 
+    // thread first touches it, so completion is serialized 
+    // on the loader
+    
+    @Override
+    public synchronized void complete(LazyClass klass) {
+        super.complete(klass);
+    }
+    
+    @Override
+    public synchronized void completeTypeParameters(LazyClass klass) {
+        super.completeTypeParameters(klass);
+    }
+    
+    @Override
+    public synchronized void complete(LazyInterface iface) {
+        super.complete(iface);
+    }
+    
+    @Override
+    public synchronized void completeTypeParameters(LazyInterface iface) {
+        super.completeTypeParameters(iface);
+    }
+    
+    @Override
+    public synchronized void complete(LazyValue value) {
+        super.complete(value);
+    }
+    
+    @Override
+    public synchronized void complete(LazyMethod method) {
+        super.complete(method);
+    }
+    
     @Override
     public void addModuleToClassPath(Module module, ArtifactResult artifact) {}
     
@@ -467,7 +632,7 @@ public class JDTModelLoader extends AbstractModelLoader {
     }
 
     @Override
-    public Module findOrCreateModule(String pkgName) {
+    public synchronized Module findOrCreateModule(String pkgName) {
         java.util.List<String> moduleName;
         boolean isJava = false;
         boolean defaultModule = false;
@@ -503,8 +668,10 @@ public class JDTModelLoader extends AbstractModelLoader {
              modules.setLanguageModule(module);
          }
          
-         if (module instanceof LazyModule) {
+         if (module instanceof LazyModule && 
+                 ((LazyModule)module).isJava()!=isJava) {
              ((LazyModule)module).setJava(isJava);
+             invalidateModuleLookups();
          }
          // FIXME: this can't be that easy.
          module.setAvailable(true);
@@ -572,13 +739,12 @@ public class JDTModelLoader extends AbstractModelLoader {
         }
     }
     
-    private final Map<String, CeylonDeclaration> sourceDeclarations = new TreeMap<String, CeylonDeclaration>();
+    private final ConcurrentMap<String, CeylonDeclaration> sourceDeclarations = 
+            new ConcurrentSkipListMap<String, CeylonDeclaration>();
     
     public Set<String> getSourceDeclarations() {
         Set<String> declarations  = new HashSet<String>();
-        synchronized (sourceDeclarations) {
-            declarations.addAll(sourceDeclarations.keySet());
-        }
+        declarations.addAll(sourceDeclarations.keySet());
         return declarations;
     }
     
@@ -610,9 +776,7 @@ public class JDTModelLoader extends AbstractModelLoader {
                             String name = Util.quoteIfJavaKeyword(decl.getIdentifier().getText());
                             String fqn = getQualifiedName(pkgName, name);
                             if (! sourceDeclarations.containsKey(fqn)) {
-                                synchronized (sourceDeclarations) {
-                                    sourceDeclarations.put(fqn, new CeylonDeclaration(unit, decl, isSourceToCompile));
-                                }
+                                sourceDeclarations.putIfAbsent(fqn, new CeylonDeclaration(unit, decl, isSourceToCompile));
                             }
                         }
                     }
@@ -638,9 +802,7 @@ public class JDTModelLoader extends AbstractModelLoader {
                 }
             }
         }
-        for (String keyToRemove : keysToRemove) {
-            classMirrorCache.remove(keyToRemove);
-        }
+        mirrorCache.removeAll(keysToRemove);
         loadedPackages.remove(packageName);
     }
 
@@ -682,13 +844,14 @@ public class JDTModelLoader extends AbstractModelLoader {
         return (TypeFactory) typeFactory;
     }
     
-    public void reset() {
+    public synchronized void reset() {
         internalCreate();
         declarationsByName.clear();
         unitsByPackage.clear();
         loadedPackages.clear();
         packageDescriptorsNeedLoading = false;
         classMirrorCache.clear();
+        invalidateModuleLookups();
     }
     
     public void completeFromClasses() {
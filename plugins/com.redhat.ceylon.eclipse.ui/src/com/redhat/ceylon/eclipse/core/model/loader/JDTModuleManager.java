@@ -34,7 +34,6 @@ import java.util.List;
 import java.util.Set;
 
 import org.antlr.runtime.ANTLRInputStream;
-import org.antlr.runtime.CommonToken;
 import org.antlr.runtime.CommonTokenStream;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.runtime.CoreException;
@@ -251,13 +250,15 @@ public class JDTModuleManager extends LazyModuleManager {
 		LinkedList<Module> dependencyTree, List<PhasedUnits> phasedUnitsOfDependencies) {
         if (! isModuleLoadedFromCompiledSource(module.getNameAsString())) {
             File file = artifact.artifact();
-            if (artifact.artifact().getName().endsWith(".src")) {
+            if (file.getName().endsWith(".src")) {
                 sourceModules.add(module.getNameAsString());
                 file = new File(file.getAbsolutePath().replaceAll("\\.src$", ".car"));
             }
             classpath.add(file);
         }
         super.resolveModule(artifact, module, moduleImport, dependencyTree, phasedUnitsOfDependencies);
+        //the packages of the module are known now
+        ((JDTModelLoader) getModelLoader()).invalidateModuleLookups();
     }
 
     @Override
@@ -334,19 +335,20 @@ public class JDTModuleManager extends LazyModuleManager {
             protected void parseFile(VirtualFile file, VirtualFile srcDir)
                     throws Exception {
                 if (file.getName().endsWith(".ceylon")) {
+                    //TODO: is this correct? does this file actually
+                    //      live in the project, or is it external?
+                    //       should VirtualFile have a getCharset()?
+                    String charset = javaProject.getProject().getDefaultCharset();
                     CeylonLexer lexer = new CeylonLexer(new ANTLRInputStream(file.getInputStream(),
-                    		//TODO: is this correct? does this file actually
-                    		//      live in the project, or is it external?
-                    		//       should VirtualFile have a getCharset()?
-                    		javaProject.getProject().getDefaultCharset()));
+                            charset));
                     CommonTokenStream tokenStream = new CommonTokenStream(lexer);
                     CeylonParser parser = new CeylonParser(tokenStream);
                     Tree.CompilationUnit cu = parser.compilationUnit();
-                    List<CommonToken> tokens = new ArrayList<CommonToken>(tokenStream.getTokens().size()); 
-                    tokens.addAll(tokenStream.getTokens());
+                    //the token list is not kept, since it is 
+                    //rarely needed for a dependency
                     PhasedUnit phasedUnit = new CeylonSourceFile(file, srcDir, cu, 
                             getModuleManager().getCurrentPackage(), getModuleManager(),
-                            getTypeChecker(), tokens);
+                            getTypeChecker(), charset);
                     addPhasedUnit(file, phasedUnit);
 
                     List<LexError> lexerErrors = lexer.getErrors();
@@ -14,18 +14,18 @@ import com.redhat.ceylon.compiler.typechecker.io.VirtualFile;
 public class SourceCodeVirtualFile implements VirtualFile {
     public static final List<VirtualFile> EMPTY_CHILDREN = Collections.unmodifiableList( new ArrayList<VirtualFile>(0) );
     
-    InputStream stream;
+    final String fileContent;
     String path = "unknown.ceylon";
     String name = "unknown.ceylon";
     
     public SourceCodeVirtualFile(String fileContent)
     {
-        stream = new ByteArrayInputStream(fileContent.getBytes());
+        this.fileContent = fileContent;
     }
     
     public SourceCodeVirtualFile(String fileContent, IPath path)
     {
-        stream = new ByteArrayInputStream(fileContent.getBytes());
+        this.fileContent = fileContent;
         this.path = path.toString();
         this.name = path.toFile().getName();
     }
@@ -42,8 +42,13 @@ public class SourceCodeVirtualFile implements VirtualFile {
         return path;
     }
     
+    /**
+     * The contents are only encoded when a stream is
+     * actually requested, since the editor lexes them
+     * directly from the string.
+     */
     public InputStream getInputStream() {
-        return stream;
+        return new ByteArrayInputStream(fileContent.getBytes());
     }
     
     public List<VirtualFile> getChildren() {